@@ -24,8 +24,11 @@ import no.jckf.dhsupport.core.configuration.DhsConfig;
 import no.jckf.dhsupport.core.scheduling.Scheduler;
 import org.bukkit.Location;
 
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.util.UUID;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Supplier;
 
 public class BukkitScheduler implements Scheduler
@@ -36,6 +39,8 @@ public class BukkitScheduler implements Scheduler
 
     protected ExecutorService executor;
 
+    protected ExecutorService ioExecutor;
+
     public BukkitScheduler(DhSupportBukkitPlugin plugin)
     {
         this.plugin = plugin;
@@ -44,17 +49,85 @@ public class BukkitScheduler implements Scheduler
 
         int threadCount = this.plugin.getDhSupport().getConfig().getInt(DhsConfig.SCHEDULER_THREADS);
 
-        this.executor = new ThreadPoolExecutor(
-            threadCount, threadCount,
-            60, TimeUnit.SECONDS,
-            new LinkedBlockingQueue<>()
+        // Work-stealing pool, so that builders can split large jobs into smaller tasks when there is little else to do.
+        // Workers that block get at most as many extra threads as the pool has to begin with. Past that, the pool runs short
+        // instead of growing.
+        this.executor = new ForkJoinPool(
+            threadCount,
+            this.createWorkerThreadFactory(),
+            null,
+            true,
+            0,
+            threadCount * 2,
+            1,
+            (pool) -> true,
+            60, TimeUnit.SECONDS
         );
 
-        ((ThreadPoolExecutor) this.executor).allowCoreThreadTimeOut(true);
+        if (this.plugin.getDhSupport().getConfig().getBool(DhsConfig.USE_VIRTUAL_THREADS, false)) {
+            this.ioExecutor = this.createVirtualThreadExecutor();
+        } else {
+            // Blocking tasks get their own threads, so that they don't hold up builders in the work-stealing pool.
+            this.ioExecutor = new ThreadPoolExecutor(
+                threadCount, threadCount,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                this.createIoThreadFactory()
+            );
+
+            ((ThreadPoolExecutor) this.ioExecutor).allowCoreThreadTimeOut(true);
+        }
 
         this.plugin.getDhSupport().info("Using " + Utils.ucFirst(this.foliaLib.getImplType().name().toLowerCase().replace('_', ' ')) + " scheduler.");
     }
 
+    protected ForkJoinPool.ForkJoinWorkerThreadFactory createWorkerThreadFactory()
+    {
+        ClassLoader classLoader = this.plugin.getClass().getClassLoader();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return (pool) -> {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool) {};
+
+            thread.setName("DHS Worker #" + threadNumber.incrementAndGet());
+            thread.setContextClassLoader(classLoader);
+
+            return thread;
+        };
+    }
+
+    protected ThreadFactory createIoThreadFactory()
+    {
+        ClassLoader classLoader = this.plugin.getClass().getClassLoader();
+
+        AtomicInteger threadNumber = new AtomicInteger();
+
+        return (runnable) -> {
+            Thread thread = new Thread(runnable, "DHS IO #" + threadNumber.incrementAndGet());
+
+            thread.setContextClassLoader(classLoader);
+
+            return thread;
+        };
+    }
+
+    protected ExecutorService createVirtualThreadExecutor()
+    {
+        // Virtual threads are only available on Java 21+, but we still compile for 17.
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+            this.plugin.getDhSupport().info("Using virtual threads for blocking tasks.");
+
+            return (ExecutorService) factory.invoke(null);
+        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException exception) {
+            this.plugin.getDhSupport().warning("Virtual threads are not supported by this Java runtime. Falling back to regular threads for blocking tasks.");
+
+            return Executors.newCachedThreadPool();
+        }
+    }
+
     @Override
     public boolean canReadWorldAsync()
     {
@@ -127,10 +200,27 @@ public class BukkitScheduler implements Scheduler
         return future;
     }
 
+    @Override
+    public <U> CompletableFuture<U> runOnIoThread(Supplier<U> supplier)
+    {
+        CompletableFuture<U> future = new CompletableFuture<>();
+
+        this.ioExecutor.execute(() -> {
+            try {
+                future.complete(supplier.get());
+            } catch (Exception exception) {
+                future.completeExceptionally(exception);
+            }
+        });
+
+        return future;
+    }
+
     @Override
     public void cancelTasks()
     {
         this.executor.shutdown();
+        this.ioExecutor.shutdown();
         this.foliaLib.getScheduler().cancelAllTasks();
     }
 
@@ -140,6 +230,12 @@ public class BukkitScheduler implements Scheduler
         return this.executor;
     }
 
+    @Override
+    public ExecutorService getIoExecutor()
+    {
+        return this.ioExecutor;
+    }
+
     public void runTimer(Runnable runnable, long initialDelay, long interval)
     {
         this.foliaLib.getScheduler().runTimer(runnable, initialDelay, interval);
@@ -0,0 +1,92 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.bukkit;
+
+import no.jckf.dhsupport.core.scheduling.TickMonitor;
+import org.bukkit.Server;
+
+import javax.annotation.Nullable;
+import java.lang.reflect.Method;
+
+// Tick statistics are only available on Paper and its forks. Spigot has no API for them, and Folia does not have a
+// single main thread to measure. In those cases we simply report nothing.
+public class BukkitTickMonitor implements TickMonitor
+{
+    protected Server server;
+
+    @Nullable
+    protected Method getTps;
+
+    @Nullable
+    protected Method getAverageTickTime;
+
+    public BukkitTickMonitor(Server server)
+    {
+        this.server = server;
+
+        try {
+            this.getTps = server.getClass().getMethod("getTPS");
+        } catch (NoSuchMethodException exception) {
+            this.getTps = null;
+        }
+
+        try {
+            this.getAverageTickTime = server.getClass().getMethod("getAverageTickTime");
+        } catch (NoSuchMethodException exception) {
+            this.getAverageTickTime = null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public Double getTps()
+    {
+        if (this.getTps == null) {
+            return null;
+        }
+
+        try {
+            double[] tps = (double[]) this.getTps.invoke(this.server);
+
+            return tps.length == 0 ? null : tps[0];
+        } catch (Exception exception) {
+            // Folia throws here. Don't try again.
+            this.getTps = null;
+
+            return null;
+        }
+    }
+
+    @Override
+    @Nullable
+    public Double getAverageTickTime()
+    {
+        if (this.getAverageTickTime == null) {
+            return null;
+        }
+
+        try {
+            return (Double) this.getAverageTickTime.invoke(this.server);
+        } catch (Exception exception) {
+            this.getAverageTickTime = null;
+
+            return null;
+        }
+    }
+}
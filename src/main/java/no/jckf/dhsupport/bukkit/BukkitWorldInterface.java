@@ -22,19 +22,31 @@ import no.jckf.dhsupport.core.Coordinates;
 import no.jckf.dhsupport.core.configuration.Configuration;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
 import no.jckf.dhsupport.core.configuration.WorldConfiguration;
+import no.jckf.dhsupport.core.dataobject.BlockPosition;
+import no.jckf.dhsupport.core.world.RegionTimestamps;
 import no.jckf.dhsupport.core.world.WorldInterface;
 import org.bukkit.*;
 import org.bukkit.block.Beacon;
+import org.bukkit.block.Block;
+import org.bukkit.block.BlockState;
+import org.bukkit.block.data.BlockData;
 
 import javax.annotation.Nullable;
 import java.io.File;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
 import java.util.logging.Logger;
 
 public class BukkitWorldInterface implements WorldInterface
@@ -43,6 +55,28 @@ public class BukkitWorldInterface implements WorldInterface
 
     protected static boolean ASYNC_LOAD_WARNING_SENT = false;
 
+    protected static final Map<Material, Color> GLASS_COLORS = new EnumMap<>(Material.class);
+
+    static {
+        for (DyeColor dyeColor : DyeColor.values()) {
+            for (String suffix : new String[] {"_STAINED_GLASS", "_STAINED_GLASS_PANE"}) {
+                Material material = Material.getMaterial(dyeColor.name() + suffix);
+
+                if (material != null) {
+                    GLASS_COLORS.put(material, dyeColor.getColor());
+                }
+            }
+        }
+    }
+
+    protected static final byte SECTION_UNKNOWN = 0;
+
+    protected static final byte SECTION_MIXED = 1;
+
+    protected static final byte SECTION_UNIFORM = 2;
+
+    protected static final byte SECTION_EMPTY = 3;
+
     protected DhSupportBukkitPlugin plugin;
 
     protected World world;
@@ -53,7 +87,9 @@ public class BukkitWorldInterface implements WorldInterface
 
     protected Logger logger;
 
-    protected Map<String, ChunkSnapshot> chunks = new HashMap<>();
+    protected Map<String, ChunkSnapshot> chunks = new ConcurrentHashMap<>();
+
+    protected Map<String, byte[]> sectionStates = new ConcurrentHashMap<>();
 
     protected UnsafeValues unsafeValues;
 
@@ -66,6 +102,11 @@ public class BukkitWorldInterface implements WorldInterface
     @Nullable
     protected Method getChunkAtAsync;
 
+    @Nullable
+    protected Method getFilteredTileEntities;
+
+    protected BlockData beaconData;
+
     public BukkitWorldInterface(DhSupportBukkitPlugin plugin, World world, Configuration config)
     {
         this.plugin = plugin;
@@ -118,6 +159,15 @@ public class BukkitWorldInterface implements WorldInterface
                 ASYNC_LOAD_WARNING_SENT = true;
             }
         }
+
+        // Paper can filter tile entities without copying all of them first.
+        try {
+            this.getFilteredTileEntities = Chunk.class.getMethod("getTileEntities", Predicate.class, boolean.class);
+        } catch (NoSuchMethodException exception) {
+
+        }
+
+        this.beaconData = Material.BEACON.createBlockData();
     }
 
     @Override
@@ -139,15 +189,18 @@ public class BukkitWorldInterface implements WorldInterface
 
         String key = chunkX + "x" + chunkZ;
 
-        if (this.chunks.containsKey(key)) {
-            return this.chunks.get(key);
+        ChunkSnapshot chunk = this.chunks.get(key);
+
+        if (chunk != null) {
+            return chunk;
         }
 
-        ChunkSnapshot chunk = this.world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, true, false);
+        chunk = this.world.getChunkAt(chunkX, chunkZ).getChunkSnapshot(true, true, false);
 
-        this.chunks.put(key, chunk);
+        // Builders may be reading columns in parallel. Keep whichever snapshot got here first.
+        ChunkSnapshot existing = this.chunks.putIfAbsent(key, chunk);
 
-        return chunk;
+        return existing == null ? chunk : existing;
     }
 
     @Override
@@ -227,6 +280,18 @@ public class BukkitWorldInterface implements WorldInterface
         return borderRadius;
     }
 
+    @Override
+    public @Nullable File getRegionFolder()
+    {
+        File worldFolder = this.world.getWorldFolder();
+
+        return switch (this.world.getEnvironment()) {
+            case NETHER -> new File(worldFolder, "DIM-1/region");
+            case THE_END -> new File(worldFolder, "DIM1/region");
+            default -> new File(worldFolder, "region");
+        };
+    }
+
     @Override
     public boolean chunkExists(int x, int z)
     {
@@ -239,10 +304,11 @@ public class BukkitWorldInterface implements WorldInterface
             return true;
         }
 
-        int regionX = Coordinates.chunkToRegion(chunkX);
-        int regionZ = Coordinates.chunkToRegion(chunkZ);
-
-        File regionFile = new File(world.getWorldFolder() + "/region/r." + regionX + "." + regionZ + ".mca");
+        File regionFile = RegionTimestamps.getRegionFile(
+            this.getRegionFolder(),
+            RegionTimestamps.chunkToRegionFile(chunkX),
+            RegionTimestamps.chunkToRegionFile(chunkZ)
+        );
 
         if (!regionFile.exists()) {
             return false;
@@ -373,6 +439,25 @@ public class BukkitWorldInterface implements WorldInterface
         return this.getChunk(x, z).getHighestBlockYAt(Coordinates.blockToChunkRelative(x), Coordinates.blockToChunkRelative(z));
     }
 
+    @Override
+    public int getOceanFloorYAt(int x, int z)
+    {
+        ChunkSnapshot chunk = this.getChunk(x, z);
+
+        int relativeX = Coordinates.blockToChunkRelative(x);
+        int relativeZ = Coordinates.blockToChunkRelative(z);
+
+        // Snapshots only carry the surface heightmap. Walk down from it past water, plants and anything else that isn't
+        // solid, which is what the live ocean floor heightmap would give us.
+        for (int y = chunk.getHighestBlockYAt(relativeX, relativeZ); y >= this.getMinY(); y--) {
+            if (chunk.getBlockType(relativeX, y, relativeZ).isSolid()) {
+                return y;
+            }
+        }
+
+        return this.getMinY();
+    }
+
     @Override
     public String getBiomeAt(int x, int y, int z)
     {
@@ -432,6 +517,105 @@ public class BukkitWorldInterface implements WorldInterface
         return properties;
     }
 
+    @Override
+    public int getSurfaceHash(int x, int z)
+    {
+        return hashSurface(this.getChunk(x, z), this.getMinY());
+    }
+
+    // Height and material of the top block of every column. Changes below the surface are not picked up.
+    // Materials are hashed by key, since ordinals shift between server versions and would mark every chunk as changed.
+    public static int hashSurface(ChunkSnapshot chunk, int minY)
+    {
+        int hash = 1;
+
+        for (int relativeX = 0; relativeX < 16; relativeX++) {
+            for (int relativeZ = 0; relativeZ < 16; relativeZ++) {
+                int y = chunk.getHighestBlockYAt(relativeX, relativeZ);
+
+                hash = 31 * hash + y;
+
+                if (y >= minY) {
+                    hash = 31 * hash + chunk.getBlockType(relativeX, y, relativeZ).getKey().toString().hashCode();
+                }
+            }
+        }
+
+        return hash;
+    }
+
+    @Override
+    public boolean isSectionEmpty(int x, int y, int z)
+    {
+        return this.getSectionState(x, y, z) == SECTION_EMPTY;
+    }
+
+    @Override
+    public boolean isSectionUniform(int x, int y, int z)
+    {
+        return this.getSectionState(x, y, z) >= SECTION_UNIFORM;
+    }
+
+    protected byte getSectionState(int x, int y, int z)
+    {
+        int chunkX = Coordinates.blockToChunk(x);
+        int chunkZ = Coordinates.blockToChunk(z);
+
+        int minY = this.getMinY();
+        int maxY = this.getMaxY();
+
+        byte[] states = this.sectionStates.computeIfAbsent(chunkX + "x" + chunkZ, (key) -> new byte[(maxY - minY + 15) >> 4]);
+
+        int sectionIndex = (y - minY) >> 4;
+
+        // Parallel builders may end up scanning the same section twice. They will agree on the result, so that's fine.
+        byte state = states[sectionIndex];
+
+        if (state != SECTION_UNKNOWN) {
+            return state;
+        }
+
+        state = this.scanSection(this.getChunk(x, z), sectionIndex, minY + (sectionIndex << 4), Math.min(minY + (sectionIndex << 4) + 16, maxY));
+
+        states[sectionIndex] = state;
+
+        return state;
+    }
+
+    protected byte scanSection(ChunkSnapshot chunk, int sectionIndex, int fromY, int toY)
+    {
+        if (chunk.isSectionEmpty(sectionIndex)) {
+            return SECTION_EMPTY;
+        }
+
+        // Comparing materials is cheap and rules out most mixed sections before we have to compare block data.
+        Material material = chunk.getBlockType(0, fromY, 0);
+
+        for (int y = fromY; y < toY; y++) {
+            for (int relativeX = 0; relativeX < 16; relativeX++) {
+                for (int relativeZ = 0; relativeZ < 16; relativeZ++) {
+                    if (chunk.getBlockType(relativeX, y, relativeZ) != material) {
+                        return SECTION_MIXED;
+                    }
+                }
+            }
+        }
+
+        BlockData blockData = chunk.getBlockData(0, fromY, 0);
+
+        for (int y = fromY; y < toY; y++) {
+            for (int relativeX = 0; relativeX < 16; relativeX++) {
+                for (int relativeZ = 0; relativeZ < 16; relativeZ++) {
+                    if (!chunk.getBlockData(relativeX, y, relativeZ).equals(blockData)) {
+                        return SECTION_MIXED;
+                    }
+                }
+            }
+        }
+
+        return material.isAir() ? SECTION_EMPTY : SECTION_UNIFORM;
+    }
+
     @Override
     public byte getBlockLightAt(int x, int y, int z)
     {
@@ -451,22 +635,74 @@ public class BukkitWorldInterface implements WorldInterface
     }
 
     @Override
-    public boolean isBeacon(int x, int y, int z)
+    public CompletableFuture<List<BlockPosition>> getActiveBeaconsAsync(int fromX, int fromZ, int toX, int toZ)
     {
-        if (!this.getMaterialAt(x, y, z).equals("minecraft:beacon")) {
-            return false;
+        // Most areas don't have a single beacon. Ask the snapshots before bothering the region thread.
+        boolean anyBeacons = false;
+
+        for (int chunkX = Coordinates.blockToChunk(fromX); chunkX <= Coordinates.blockToChunk(toX) && !anyBeacons; chunkX++) {
+            for (int chunkZ = Coordinates.blockToChunk(fromZ); chunkZ <= Coordinates.blockToChunk(toZ) && !anyBeacons; chunkZ++) {
+                anyBeacons = this.world.isChunkLoaded(chunkX, chunkZ)
+                    && this.getChunk(Coordinates.chunkToBlock(chunkX), Coordinates.chunkToBlock(chunkZ)).contains(this.beaconData);
+            }
+        }
+
+        if (!anyBeacons) {
+            return CompletableFuture.completedFuture(new ArrayList<>());
+        }
+
+        // Tile entities and beacon tiers can only be read on the owning thread, so gather everything in a single hop.
+        return this.plugin.getDhSupport().getScheduler().runOnRegionThread(this.world.getUID(), fromX, fromZ, () -> {
+            List<BlockPosition> positions = new ArrayList<>();
+
+            for (int chunkX = Coordinates.blockToChunk(fromX); chunkX <= Coordinates.blockToChunk(toX); chunkX++) {
+                for (int chunkZ = Coordinates.blockToChunk(fromZ); chunkZ <= Coordinates.blockToChunk(toZ); chunkZ++) {
+                    if (!this.world.isChunkLoaded(chunkX, chunkZ)) {
+                        continue;
+                    }
+
+                    for (BlockState state : this.getBeaconTileEntities(this.world.getChunkAt(chunkX, chunkZ))) {
+                        if (!(state instanceof Beacon) || ((Beacon) state).getTier() == 0) {
+                            continue;
+                        }
+
+                        if (state.getX() < fromX || state.getX() > toX || state.getZ() < fromZ || state.getZ() > toZ) {
+                            continue;
+                        }
+
+                        positions.add(new BlockPosition(state.getX(), state.getY(), state.getZ()));
+                    }
+                }
+            }
+
+            return positions;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    protected Collection<BlockState> getBeaconTileEntities(Chunk chunk)
+    {
+        if (this.getFilteredTileEntities == null) {
+            return Arrays.asList(chunk.getTileEntities());
         }
 
-        return this.plugin.getDhSupport().getScheduler()
-            .runOnRegionThread(this.world.getUID(), x, z, () ->
-                ((Beacon) this.world.getBlockAt(x, y, z).getState()).getTier() > 0
-            )
-            .join();
+        Predicate<Block> isBeacon = (block) -> block.getType() == Material.BEACON;
+
+        try {
+            return (Collection<BlockState>) this.getFilteredTileEntities.invoke(chunk, isBeacon, false);
+        } catch (IllegalAccessException | InvocationTargetException exception) {
+            throw new RuntimeException(exception);
+        }
     }
 
     @Override
     public int getBeaconColor(int x, int y, int z)
     {
+        ChunkSnapshot chunk = this.getChunk(x, z);
+
+        int relativeX = Coordinates.blockToChunkRelative(x);
+        int relativeZ = Coordinates.blockToChunkRelative(z);
+
         int skipped = 0;
         int n = 0;
         int red = 0;
@@ -475,12 +711,12 @@ public class BukkitWorldInterface implements WorldInterface
 
         int maxY = this.getMaxY();
 
-        while (y < maxY) {
+        while (y + 1 < maxY) {
             y++;
 
-            String material = this.getMaterialAt(x, y, z);
+            Color color = GLASS_COLORS.get(chunk.getBlockType(relativeX, y, relativeZ));
 
-            if (!material.startsWith("minecraft:") || (!material.endsWith("stained_glass") && !material.endsWith("stained_glass_pane"))) {
+            if (color == null) {
                 skipped++;
 
                 if (skipped >= 5) {
@@ -492,10 +728,6 @@ public class BukkitWorldInterface implements WorldInterface
 
             n++;
 
-            String colorName = material.split("[:_]")[1].toUpperCase();
-
-            Color color = DyeColor.valueOf(colorName).getColor();
-
             red += color.getRed();
             green += color.getGreen();
             blue += color.getBlue();
@@ -26,8 +26,10 @@ import no.jckf.dhsupport.bukkit.handler.PluginMessageProxy;
 import no.jckf.dhsupport.bukkit.handler.WorldHandler;
 import no.jckf.dhsupport.core.DhSupport;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
+import org.bukkit.Bukkit;
 import org.bukkit.World;
 import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import javax.annotation.Nullable;
@@ -70,6 +72,7 @@ public class DhSupportBukkitPlugin extends JavaPlugin
 
         this.scheduler = new BukkitScheduler(this);
         this.dhSupport.setScheduler(this.scheduler);
+        this.dhSupport.setTickMonitor(new BukkitTickMonitor(this.getServer()));
 
         this.dhSupport.onEnable();
 
@@ -80,8 +83,23 @@ public class DhSupportBukkitPlugin extends JavaPlugin
             this.dhSupport.updateTouchedLods();
         }, lodRefreshInterval, lodRefreshInterval);
 
+        int autoThrottleInterval = Math.max(1, this.getDhSupport().getConfig().getInt(DhsConfig.AUTO_THROTTLE_INTERVAL, 20));
+
+        this.scheduler.runTimer(
+            () -> this.dhSupport.getLoadGovernor().update(),
+            autoThrottleInterval,
+            autoThrottleInterval
+        );
+
         this.getServer().getPluginManager().registerEvents(new WorldHandler(this), this);
-        this.getServer().getPluginManager().registerEvents(new PlayerHandler(this), this);
+        PlayerHandler playerHandler = new PlayerHandler(this);
+
+        this.getServer().getPluginManager().registerEvents(playerHandler, this);
+
+        // Players that were already online before we were enabled, like after a reload.
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            playerHandler.indexPlayer(player);
+        }
 
         this.getCommand("dhs").setExecutor(new DhsCommand(this));
         this.getCommand("dh").setExecutor(new DhCommand(this));
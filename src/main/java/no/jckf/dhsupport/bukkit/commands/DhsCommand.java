@@ -189,6 +189,9 @@ public class DhsCommand implements CommandExecutor
             case "stop":
                 return this.pregenStop(sender, Arrays.copyOfRange(args, 1, args.length));
 
+            case "resume":
+                return this.pregenResume(sender, Arrays.copyOfRange(args, 1, args.length));
+
             case "status":
                 return this.pregenStatus(sender, Arrays.copyOfRange(args, 1, args.length));
         }
@@ -250,6 +253,7 @@ public class DhsCommand implements CommandExecutor
         }
 
         boolean force = args.length >= 5 && args[4].equals("force");
+        boolean incremental = args.length >= 5 && args[4].equals("incremental");
 
         sender.sendMessage(ChatColor.YELLOW + "Generating LODs for view distance of " + ChatColor.GREEN + Coordinates.blockToChunk(radius) + ChatColor.YELLOW + " chunks in world " + ChatColor.GREEN + world.getName() + ChatColor.YELLOW + " starting at center " + ChatColor.GREEN + centerX + " " + centerZ + ChatColor.YELLOW + "...");
 
@@ -257,7 +261,11 @@ public class DhsCommand implements CommandExecutor
             sender.sendMessage(ChatColor.YELLOW + "All existing LODs in this area will be re-generated.");
         }
 
-        this.plugin.getDhSupport().preGenerate(world, centerX, centerZ, radius, force);
+        if (incremental) {
+            sender.sendMessage(ChatColor.YELLOW + "Existing LODs will be re-generated if their chunks have been saved since.");
+        }
+
+        this.plugin.getDhSupport().preGenerate(world, centerX, centerZ, radius, force, incremental);
 
         return true;
     }
@@ -298,6 +306,45 @@ public class DhsCommand implements CommandExecutor
         return true;
     }
 
+    protected boolean pregenResume(CommandSender sender, String[] args)
+    {
+        WorldInterface world;
+
+        if (args.length >= 1) {
+            World bukkitWorld = this.plugin.getWorld(args[0]);
+
+            if (bukkitWorld == null) {
+                sender.sendMessage(ChatColor.RED + "Unknown world.");
+                return true;
+            }
+
+            world = this.plugin.getDhSupport().getWorldInterface(bukkitWorld.getUID());
+        } else if (sender instanceof Player) {
+            world = this.plugin.getDhSupport().getWorldInterface(((Player) sender).getWorld().getUID());
+        } else {
+            world = null;
+        }
+
+        if (world == null) {
+            sender.sendMessage(ChatColor.RED + "No world specified.");
+            return true;
+        }
+
+        if (this.plugin.getDhSupport().isPreGenerating(world)) {
+            sender.sendMessage(ChatColor.RED + "Pre-generation is already running in world " + ChatColor.YELLOW + world.getName() + ChatColor.RED + ".");
+            return true;
+        }
+
+        if (!this.plugin.getDhSupport().resumePreGenerator(world, false)) {
+            sender.sendMessage(ChatColor.RED + "No saved pre-generation job in world " + ChatColor.YELLOW + world.getName() + ChatColor.RED + ".");
+            return true;
+        }
+
+        sender.sendMessage(ChatColor.YELLOW + "Resuming pre-generation in world " + ChatColor.GREEN + world.getName() + ChatColor.YELLOW + "...");
+
+        return true;
+    }
+
     protected boolean pregenStatus(CommandSender sender, String[] args)
     {
         WorldInterface world;
@@ -332,12 +379,18 @@ public class DhsCommand implements CommandExecutor
         Duration elapsedTime = generator.getElapsedTime();
 
         float momentaryLodsPerSecond = (float) this.plugin.getDhSupport().getGenerationTracker().getPingsPerSecond();
-        float totalLodsPerSecond = (float) generator.getCompletedRequests() / elapsedTime.toSeconds();
+        float totalLodsPerSecond = (float) generator.getCompletedRequestsThisRun() / generator.getElapsedTimeThisRun().toSeconds();
 
         sender.sendMessage(ChatColor.GREEN + "Generation progress: " + ChatColor.YELLOW + String.format("%.2f", generator.getProgress() * 100f) + "%");
         sender.sendMessage(ChatColor.GREEN + "Processed LODs: " + ChatColor.YELLOW + generator.getCompletedRequests() + ChatColor.GREEN + " / " + ChatColor.YELLOW + generator.getTargetRequests() + ChatColor.GREEN + " (" + ChatColor.YELLOW + String.format("%.2f", totalLodsPerSecond * 16) + ChatColor.GREEN + " CPS)");
+        sender.sendMessage(ChatColor.GREEN + "Generated: " + ChatColor.YELLOW + generator.getGeneratedCount() + ChatColor.GREEN + ", skipped: " + ChatColor.YELLOW + generator.getSkippedCount());
+        sender.sendMessage(ChatColor.GREEN + "Traversal: " + ChatColor.YELLOW + generator.getTraversalType() + ChatColor.GREEN + ", concurrency: " + ChatColor.YELLOW + generator.getConcurrencyLimit());
         sender.sendMessage(ChatColor.GREEN + "Time elapsed: " + ChatColor.YELLOW + Utils.humanReadableDuration(elapsedTime));
 
+        if (this.plugin.getDhSupport().getLoadGovernor().isOverloaded()) {
+            sender.sendMessage(ChatColor.RED + "Waiting for server load to drop.");
+        }
+
         if (generator.isRunning()) {
             sender.sendMessage(ChatColor.GREEN + "Time remaining: " + ChatColor.YELLOW + Utils.humanReadableDuration(Duration.ofSeconds((long) ((generator.getTargetRequests() - generator.getCompletedRequests()) / momentaryLodsPerSecond))));
         } else {
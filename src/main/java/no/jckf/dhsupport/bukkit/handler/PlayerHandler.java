@@ -19,9 +19,20 @@
 package no.jckf.dhsupport.bukkit.handler;
 
 import no.jckf.dhsupport.bukkit.DhSupportBukkitPlugin;
+import no.jckf.dhsupport.core.Coordinates;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
 import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerRespawnEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.vehicle.VehicleMoveEvent;
 
 public class PlayerHandler implements Listener
 {
@@ -32,9 +43,91 @@ public class PlayerHandler implements Listener
         this.plugin = plugin;
     }
 
+    public void indexPlayer(Player player)
+    {
+        this.indexPlayer(player, player.getLocation());
+    }
+
+    protected void indexPlayer(Player player, Location location)
+    {
+        this.plugin.getDhSupport().getPlayerIndex().update(
+            player.getUniqueId(),
+            location.getWorld().getUID(),
+            Coordinates.blockToChunk(location.getBlockX()),
+            Coordinates.blockToChunk(location.getBlockZ())
+        );
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event)
+    {
+        this.indexPlayer(event.getPlayer());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event)
+    {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+
+        // Most moves happen within a single chunk, and those don't matter to us.
+        if (to == null || (from.getBlockX() >> 4 == to.getBlockX() >> 4 && from.getBlockZ() >> 4 == to.getBlockZ() >> 4)) {
+            return;
+        }
+
+        this.indexPlayer(event.getPlayer(), to);
+    }
+
+    // Players riding a vehicle don't get move events of their own, so follow the vehicle instead.
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onVehicleMove(VehicleMoveEvent event)
+    {
+        Location from = event.getFrom();
+        Location to = event.getTo();
+
+        if (from.getBlockX() >> 4 == to.getBlockX() >> 4 && from.getBlockZ() >> 4 == to.getBlockZ() >> 4) {
+            return;
+        }
+
+        this.indexPassengers(event.getVehicle(), to);
+    }
+
+    protected void indexPassengers(Entity vehicle, Location location)
+    {
+        for (Entity passenger : vehicle.getPassengers()) {
+            if (passenger instanceof Player) {
+                this.indexPlayer((Player) passenger, location);
+            }
+
+            this.indexPassengers(passenger, location);
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerTeleport(PlayerTeleportEvent event)
+    {
+        if (event.getTo() != null) {
+            this.indexPlayer(event.getPlayer(), event.getTo());
+        }
+    }
+
+    // Respawning in the same world fires neither a teleport nor a world change.
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerRespawn(PlayerRespawnEvent event)
+    {
+        this.indexPlayer(event.getPlayer(), event.getRespawnLocation());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerChangedWorld(PlayerChangedWorldEvent event)
+    {
+        this.indexPlayer(event.getPlayer());
+    }
+
     @EventHandler
     public void onPlayerDisconnect(PlayerQuitEvent event)
     {
         this.plugin.getDhSupport().clearPlayerConfiguration(event.getPlayer().getUniqueId());
+        this.plugin.getDhSupport().getPlayerIndex().remove(event.getPlayer().getUniqueId());
     }
 }
@@ -21,6 +21,8 @@ package no.jckf.dhsupport.bukkit.handler;
 import no.jckf.dhsupport.bukkit.BukkitWorldInterface;
 import no.jckf.dhsupport.bukkit.DhSupportBukkitPlugin;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
+import no.jckf.dhsupport.core.world.WorldInterface;
+import org.bukkit.ChunkSnapshot;
 import org.bukkit.Location;
 import org.bukkit.World;
 import org.bukkit.block.Block;
@@ -29,14 +31,16 @@ import org.bukkit.event.Event;
 import org.bukkit.event.EventHandler;
 import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkUnloadEvent;
 import org.bukkit.event.world.WorldLoadEvent;
 import org.bukkit.event.world.WorldUnloadEvent;
 
-import java.lang.reflect.InvocationTargetException;
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.Collection;
 
 public class WorldHandler implements Listener
 {
@@ -44,15 +48,16 @@ public class WorldHandler implements Listener
 
     protected DhSupportBukkitPlugin plugin;
 
-    protected Map<String, Method> eventMethods = new HashMap<>();
-
     public WorldHandler(DhSupportBukkitPlugin plugin)
     {
         this.plugin = plugin;
 
         this.plugin.getServer().getWorlds().forEach(this::addWorldInterface);
 
-        this.registerUpdateListeners();
+        // Block events are not needed when changes are only detected from chunk unloads.
+        if (!this.plugin.getDhSupport().getConfig().getString(DhsConfig.CHANGE_DETECTION, "events").equalsIgnoreCase("chunks")) {
+            this.registerUpdateListeners();
+        }
     }
 
     protected void addWorldInterface(World world)
@@ -64,6 +69,8 @@ public class WorldHandler implements Listener
         worldInterface.doUnsafeThings();
 
         this.plugin.getDhSupport().setWorldInterface(world.getUID(), worldInterface);
+
+        this.plugin.getDhSupport().resumePreGenerator(worldInterface, true);
     }
 
     protected void removeWorldInterface(World world)
@@ -71,90 +78,178 @@ public class WorldHandler implements Listener
         this.plugin.getDhSupport().setWorldInterface(world.getUID(), null);
     }
 
-    protected void touchLod(Location location, String reason)
-    {
-        this.plugin.getDhSupport().touchLod(location.getWorld().getUID(), location.getBlockX(), location.getBlockZ(), reason);
-    }
-
     protected void registerUpdateListeners()
     {
         Listener dummyListener = new Listener() {};
 
-        for (String eventClassName : this.plugin.getDhSupport().getConfig().getStringList(DhsConfig.UPDATE_EVENTS)) {
-            try {
-                Class<? extends Event> eventClass = Class.forName(eventClassName).asSubclass(Event.class);
+        for (String eventSpec : this.plugin.getDhSupport().getConfig().getStringList(DhsConfig.UPDATE_EVENTS)) {
+            // Either just a class name, or a class name and the methods to call on the event to get to its blocks.
+            String[] parts = eventSpec.split("#", 2);
+
+            String eventClassName = parts[0];
 
-                this.plugin.getServer().getPluginManager().registerEvent(
-                    eventClass,
-                    dummyListener,
-                    EventPriority.MONITOR,
-                    (listener, event) -> this.handleUpdateEvent(event),
-                    this.plugin
-                );
+            Class<? extends Event> eventClass;
 
-                this.plugin.getDhSupport().info("Listening for " + eventClassName + ".");
+            try {
+                eventClass = Class.forName(eventClassName).asSubclass(Event.class);
             } catch (ClassNotFoundException exception) {
                 this.plugin.getDhSupport().warning("Could not find event class: " + eventClassName);
+                continue;
+            }
+
+            MethodHandle accessor;
+
+            try {
+                accessor = parts.length > 1 ? this.compileAccessor(eventClass, parts[1]) : this.findEventAccessor(eventClass);
+            } catch (NoSuchMethodException | IllegalAccessException exception) {
+                this.plugin.getDhSupport().warning("Could not use " + eventSpec + ": " + exception.getMessage());
+                continue;
+            }
+
+            if (accessor == null) {
+                this.plugin.getDhSupport().warning("Unsure how to handle event: " + eventClassName);
+                continue;
             }
+
+            this.plugin.getServer().getPluginManager().registerEvent(
+                eventClass,
+                dummyListener,
+                EventPriority.MONITOR,
+                (listener, event) -> {
+                    // Handlers are also called for subclasses of the event, which the accessor can deal with as well.
+                    if (eventClass.isInstance(event)) {
+                        this.handleUpdateEvent(event, accessor, eventClassName);
+                    }
+                },
+                this.plugin
+            );
+
+            this.plugin.getDhSupport().info("Listening for " + eventSpec + ".");
         }
     }
 
-    protected void handleUpdateEvent(Event event)
+    protected void handleUpdateEvent(Event event, MethodHandle accessor, String reason)
     {
-        Class<? extends Event> eventClass = event.getClass();
-        String eventClassName = eventClass.getName();
-        Method method = null;
+        Object result;
 
-        if (this.eventMethods.containsKey(eventClassName)) {
-            method = this.eventMethods.get(eventClassName);
+        try {
+            result = (Object) accessor.invokeExact((Object) event);
+        } catch (Throwable exception) {
+            throw new RuntimeException(exception);
+        }
 
-            // We've seen this event before, but don't know how to handle it.
-            if (method == null) {
-                return;
-            }
+        if (result == null) {
+            return;
+        }
+
+        if (result instanceof Block block) {
+            this.plugin.getDhSupport().touchLod(block.getWorld().getUID(), block.getX(), block.getZ(), reason);
+        } else if (result instanceof BlockState blockState) {
+            this.plugin.getDhSupport().touchLod(blockState.getWorld().getUID(), blockState.getX(), blockState.getZ(), reason);
+        } else if (result instanceof Location location) {
+            this.plugin.getDhSupport().touchLod(location.getWorld().getUID(), location.getBlockX(), location.getBlockZ(), reason);
+        } else if (result instanceof Collection<?> items) {
+            this.touchLods(items, reason);
         } else {
-            for (String methodName : EVENT_METHOD_NAMES) {
-                try {
-                    method = eventClass.getMethod(methodName);
-                    break;
-                } catch (NoSuchMethodException exception) {
+            this.plugin.getDhSupport().warning("Unknown result from event: " + reason);
+        }
+    }
+
+    // Find the first of the usual block getters that the event has.
+    @Nullable
+    protected MethodHandle findEventAccessor(Class<?> eventClass) throws IllegalAccessException
+    {
+        for (String methodName : EVENT_METHOD_NAMES) {
+            try {
+                return this.compileAccessor(eventClass, methodName);
+            } catch (NoSuchMethodException exception) {
 
-                }
             }
+        }
+
+        return null;
+    }
+
+    // Turn a chain of getters, like "getRegion.getBlocks", into a single handle that takes the event and returns the final result.
+    protected MethodHandle compileAccessor(Class<?> eventClass, String expression) throws NoSuchMethodException, IllegalAccessException
+    {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+
+        MethodHandle accessor = MethodHandles.identity(eventClass);
+
+        Class<?> type = eventClass;
+
+        for (String methodName : expression.split("\\.")) {
+            Method method = type.getMethod(methodName.trim());
 
-            // Store the result, even if it is null.
-            this.eventMethods.put(eventClassName, method);
+            MethodHandle getter = lookup.unreflect(method).asType(MethodType.methodType(method.getReturnType(), type));
+
+            accessor = MethodHandles.filterReturnValue(accessor, getter);
+
+            type = method.getReturnType();
+        }
+
+        return accessor.asType(MethodType.methodType(Object.class, Object.class));
+    }
+
+    // Explosions and pistons can move thousands of blocks at once, so hand them over in one go instead of one by one.
+    protected void touchLods(Collection<?> items, String reason)
+    {
+        int[] xs = new int[items.size()];
+        int[] zs = new int[items.size()];
+        int count = 0;
 
-            // This is the first time we see this even, and we don't know how to handle it.
-            if (method == null) {
-                this.plugin.getDhSupport().warning("Unsure how to handle event: " + eventClass.getName());
-                return;
+        World world = null;
+
+        for (Object item : items) {
+            if (item instanceof Block block) {
+                world = block.getWorld();
+                xs[count] = block.getX();
+                zs[count] = block.getZ();
+                count++;
+            } else if (item instanceof BlockState blockState) {
+                world = blockState.getWorld();
+                xs[count] = blockState.getX();
+                zs[count] = blockState.getZ();
+                count++;
+            } else if (item instanceof Location location) {
+                world = location.getWorld();
+                xs[count] = location.getBlockX();
+                zs[count] = location.getBlockZ();
+                count++;
             }
         }
 
-        Object result;
+        if (world == null) {
+            return;
+        }
 
-        try {
-            result = method.invoke(event);
-        } catch (IllegalAccessException | InvocationTargetException exception) {
-            throw new RuntimeException(exception);
+        this.plugin.getDhSupport().touchLods(world.getUID(), xs, zs, count, reason);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent chunkUnload)
+    {
+        if (!chunkUnload.isSaveChunk()) {
+            return;
         }
 
-        if (result instanceof Block) {
-            this.touchLod(((Block) result).getLocation(), eventClassName);
-        } else if (result instanceof BlockState) {
-            this.touchLod(((BlockState) result).getLocation(), eventClassName);
-        } else if (result instanceof List<?>) {
-            for (Object item : (List<?>) result) {
-                if (item instanceof Block) {
-                    this.touchLod(((Block) item).getLocation(), eventClassName);
-                } else if (item instanceof BlockState) {
-                    this.touchLod(((BlockState) item).getLocation(), eventClassName);
-                }
-            }
-        } else {
-            this.plugin.getDhSupport().warning("Unknown result from event: " + eventClassName);
+        WorldInterface world = this.plugin.getDhSupport().getWorldInterface(chunkUnload.getWorld().getUID());
+
+        if (world == null || !this.plugin.getDhSupport().isChunkChangeDetectionEnabled(world)) {
+            return;
         }
+
+        int chunkX = chunkUnload.getChunk().getX();
+        int chunkZ = chunkUnload.getChunk().getZ();
+        int minY = world.getMinY();
+
+        // Taking the snapshot has to happen now, but the hashing and the database lookup can wait.
+        ChunkSnapshot snapshot = chunkUnload.getChunk().getChunkSnapshot(true, false, false);
+
+        this.plugin.getDhSupport().getScheduler().runOnSeparateThread(
+            () -> this.plugin.getDhSupport().checkChunkHash(world.getId(), chunkX, chunkZ, BukkitWorldInterface.hashSurface(snapshot, minY))
+        );
     }
 
     @EventHandler
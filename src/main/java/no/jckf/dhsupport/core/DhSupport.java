@@ -18,39 +18,57 @@
 
 package no.jckf.dhsupport.core;
 
+import no.jckf.dhsupport.core.bytestream.Decoder;
 import no.jckf.dhsupport.core.bytestream.Encoder;
+import no.jckf.dhsupport.core.collections.LongConcurrentMap;
 import no.jckf.dhsupport.core.configuration.Configurable;
 import no.jckf.dhsupport.core.configuration.Configuration;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
 import no.jckf.dhsupport.core.database.Database;
+import no.jckf.dhsupport.core.database.migrations.AddIncrementalToPreGenJobs;
+import no.jckf.dhsupport.core.database.migrations.AddSourceTimestampToLods;
+import no.jckf.dhsupport.core.database.migrations.AddTraversalToPreGenJobs;
+import no.jckf.dhsupport.core.database.migrations.CreateChunkHashesTable;
 import no.jckf.dhsupport.core.database.migrations.CreateLodsTable;
+import no.jckf.dhsupport.core.database.migrations.CreateMipLodsTable;
+import no.jckf.dhsupport.core.database.migrations.CreatePreGenJobsTable;
 import no.jckf.dhsupport.core.database.models.LodModel;
+import no.jckf.dhsupport.core.database.models.PreGenJobModel;
 import no.jckf.dhsupport.core.database.repositories.AsyncLodRepository;
+import no.jckf.dhsupport.core.database.repositories.PreGenJobRepository;
+import no.jckf.dhsupport.core.dataobject.Beacon;
 import no.jckf.dhsupport.core.dataobject.Lod;
 import no.jckf.dhsupport.core.dataobject.SectionPosition;
 import no.jckf.dhsupport.core.handler.LodHandler;
 import no.jckf.dhsupport.core.handler.PlayerConfigHandler;
 import no.jckf.dhsupport.core.handler.PluginMessageHandler;
 import no.jckf.dhsupport.core.lodbuilders.LodBuilder;
+import no.jckf.dhsupport.core.lodbuilders.LodMerger;
 import no.jckf.dhsupport.core.message.plugin.FullDataChunkMessage;
 import no.jckf.dhsupport.core.message.plugin.FullDataPartialUpdateMessage;
 import no.jckf.dhsupport.core.message.plugin.PluginMessageSender;
+import no.jckf.dhsupport.core.pregen.PreGenCoordinator;
 import no.jckf.dhsupport.core.scheduling.Scheduler;
+import no.jckf.dhsupport.core.scheduling.TickMonitor;
+import no.jckf.dhsupport.core.world.PlayerIndex;
+import no.jckf.dhsupport.core.world.RegionTimestamps;
 import no.jckf.dhsupport.core.world.WorldInterface;
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
 
 import javax.annotation.Nullable;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 import java.util.logging.Logger;
 
 public class DhSupport implements Configurable
@@ -63,12 +81,17 @@ public class DhSupport implements Configurable
 
     protected AsyncLodRepository lodRepository;
 
+    protected PreGenJobRepository preGenJobRepository;
+
     protected Configuration configuration;
 
     protected Logger logger;
 
     protected Scheduler scheduler;
 
+    @Nullable
+    protected TickMonitor tickMonitor;
+
     protected UpdateChecker updateChecker;
 
     @Nullable
@@ -78,18 +101,42 @@ public class DhSupport implements Configurable
 
     protected Map<UUID, WorldInterface> worldInterfaces = new HashMap<>();
 
+    protected Map<UUID, Integer> worldIndexes = new ConcurrentHashMap<>();
+
+    protected List<UUID> indexedWorldIds = new ArrayList<>();
+
     protected PluginMessageHandler pluginMessageHandler;
 
     protected PluginMessageSender pluginMessageSender;
 
-    protected Map<String, CompletableFuture<Lod>> queuedBuilders = new ConcurrentHashMap<>();
+    protected LongConcurrentMap<CompletableFuture<LodModel>> pendingLods = new LongConcurrentMap<>();
+
+    // Requests for LODs above detail level 6, by detail level.
+    protected Map<Integer, LongConcurrentMap<CompletableFuture<LodModel>>> pendingMipLods = new ConcurrentHashMap<>();
+
+    protected LongConcurrentMap<CompletableFuture<Lod>> queuedBuilders = new LongConcurrentMap<>();
 
-    protected Map<String, LodModel> touchedLods = new ConcurrentHashMap<>();
+    // Bit set of changed columns for each touched LOD.
+    protected LongConcurrentMap<long[]> touchedLods = new LongConcurrentMap<>();
+
+    // When each recently refreshed LOD was last rebuilt.
+    protected LongConcurrentMap<Long> lastLodRefreshes = new LongConcurrentMap<>();
+
+    // LODs that are being patched or rebuilt. Their stale versions are served in the meantime.
+    protected LongConcurrentMap<CompletableFuture<LodModel>> refreshingLods = new LongConcurrentMap<>();
 
     protected Map<UUID, Configuration> playerConfigurations = new HashMap<>();
 
+    protected PlayerIndex playerIndex = new PlayerIndex();
+
     protected Map<UUID, PreGenerator> preGenerators = new HashMap<>();
 
+    protected LoadGovernor loadGovernor;
+
+    protected PreGenCoordinator preGenCoordinator;
+
+    protected RegionTimestamps regionTimestamps = new RegionTimestamps();
+
     public DhSupport(String pluginVersion)
     {
         this.pluginVersion = pluginVersion;
@@ -98,15 +145,21 @@ public class DhSupport implements Configurable
 
         this.database = new Database();
         this.lodRepository = new AsyncLodRepository(this.database);
+        this.preGenJobRepository = new PreGenJobRepository(this.database);
 
         this.pluginMessageHandler = new PluginMessageHandler(this);
 
+        this.loadGovernor = new LoadGovernor(this);
+
+        this.preGenCoordinator = new PreGenCoordinator(this);
+
         this.updateChecker = new UpdateChecker(62013887);
     }
 
     public void onEnable()
     {
         this.lodRepository.setLogger(this.getLogger());
+        this.preGenJobRepository.setLogger(this.getLogger());
 
         try {
             this.database.open(
@@ -115,6 +168,12 @@ public class DhSupport implements Configurable
             );
 
             this.database.addMigration(CreateLodsTable.class);
+            this.database.addMigration(CreatePreGenJobsTable.class);
+            this.database.addMigration(AddTraversalToPreGenJobs.class);
+            this.database.addMigration(AddSourceTimestampToLods.class);
+            this.database.addMigration(AddIncrementalToPreGenJobs.class);
+            this.database.addMigration(CreateMipLodsTable.class);
+            this.database.addMigration(CreateChunkHashesTable.class);
 
             this.database.migrate();
         } catch (Exception exception) {
@@ -132,7 +191,7 @@ public class DhSupport implements Configurable
         }
 
         if (this.getConfig().getBool(DhsConfig.CHECK_FOR_UPDATES, false)) {
-            this.getScheduler().runOnSeparateThread(() -> {
+            this.getScheduler().runOnIoThread(() -> {
                 this.checkUpdates();
                 return null;
             });
@@ -141,6 +200,16 @@ public class DhSupport implements Configurable
 
     public void onDisable()
     {
+        // Don't leave anything waiting for the server load to drop.
+        this.loadGovernor.resume();
+
+        // Save progress, so that pre-generation can continue after a restart.
+        for (PreGenerator preGenerator : this.preGenerators.values()) {
+            if (preGenerator.isRunning()) {
+                preGenerator.suspend();
+            }
+        }
+
         if (this.pluginMessageHandler != null) {
             this.pluginMessageHandler.onDisable();
         }
@@ -166,6 +235,17 @@ public class DhSupport implements Configurable
         return this.scheduler;
     }
 
+    public void setTickMonitor(@Nullable TickMonitor tickMonitor)
+    {
+        this.tickMonitor = tickMonitor;
+    }
+
+    @Nullable
+    public TickMonitor getTickMonitor()
+    {
+        return this.tickMonitor;
+    }
+
     public boolean pause()
     {
         if (this.pause != null) {
@@ -201,6 +281,34 @@ public class DhSupport implements Configurable
         }
     }
 
+    public LoadGovernor getLoadGovernor()
+    {
+        return this.loadGovernor;
+    }
+
+    public PreGenCoordinator getPreGenCoordinator()
+    {
+        return this.preGenCoordinator;
+    }
+
+    // Latest save time of the chunks in a section, according to the region files. 0 if none of them are saved.
+    public int getSectionSourceTimestamp(WorldInterface world, int sectionX, int sectionZ)
+    {
+        return this.regionTimestamps.getLatestTimestamp(
+            world.getRegionFolder(),
+            Coordinates.sectionToChunk(sectionX),
+            Coordinates.sectionToChunk(sectionZ),
+            Coordinates.sectionToChunk(1),
+            Coordinates.sectionToChunk(1)
+        );
+    }
+
+    // Includes builders that are waiting for the load governor.
+    public int getQueuedBuilderCount()
+    {
+        return this.queuedBuilders.size();
+    }
+
     public PerformanceTracker getGenerationTracker()
     {
         return this.generationTracker;
@@ -222,6 +330,35 @@ public class DhSupport implements Configurable
         return this.worldInterfaces.get(id);
     }
 
+    public int getWorldIndex(UUID worldId)
+    {
+        Integer index = this.worldIndexes.get(worldId);
+
+        if (index != null) {
+            return index;
+        }
+
+        synchronized (this.indexedWorldIds) {
+            return this.worldIndexes.computeIfAbsent(worldId, (id) -> {
+                if (this.indexedWorldIds.size() >= SectionKey.MAX_WORLDS) {
+                    throw new IllegalStateException("Too many worlds. At most " + SectionKey.MAX_WORLDS + " are supported.");
+                }
+
+                this.indexedWorldIds.add(id);
+
+                return this.indexedWorldIds.size() - 1;
+            });
+        }
+    }
+
+    @Nullable
+    public UUID getWorldIdByIndex(int index)
+    {
+        synchronized (this.indexedWorldIds) {
+            return index < this.indexedWorldIds.size() ? this.indexedWorldIds.get(index) : null;
+        }
+    }
+
     public PluginMessageHandler getPluginMessageHandler()
     {
         return this.pluginMessageHandler;
@@ -243,6 +380,11 @@ public class DhSupport implements Configurable
         return this.lodRepository;
     }
 
+    public PreGenJobRepository getPreGenJobRepository()
+    {
+        return this.preGenJobRepository;
+    }
+
     public Configuration getConfig()
     {
         return this.configuration;
@@ -269,6 +411,11 @@ public class DhSupport implements Configurable
         this.getLogger().warning(message);
     }
 
+    public boolean isDebugEnabled()
+    {
+        return this.getConfig().getBool(DhsConfig.DEBUG, false);
+    }
+
     public void debug(String message)
     {
         // TODO: Use log levels properly?
@@ -298,6 +445,11 @@ public class DhSupport implements Configurable
         this.playerConfigurations.put(playerId, playerConfiguration);
     }
 
+    public PlayerIndex getPlayerIndex()
+    {
+        return this.playerIndex;
+    }
+
     public Configuration getPlayerConfiguration(UUID playerId)
     {
         return this.playerConfigurations.get(playerId);
@@ -329,35 +481,58 @@ public class DhSupport implements Configurable
 
     public CompletableFuture<Lod> queueBuilder(UUID worldId, SectionPosition position, LodBuilder builder)
     {
-        String key = LodModel.create()
-            .setWorldId(worldId)
-            .setX(position.getX())
-            .setZ(position.getZ())
-            .toString();
+        return this.queueBuilder(worldId, position, builder, builder::generate);
+    }
+
+    public CompletableFuture<Lod> queueBuilder(UUID worldId, SectionPosition position, LodBuilder builder, Supplier<Lod> task)
+    {
+        return this.queueBuilder(worldId, position, builder, task, true);
+    }
+
+    // Callers that already hold a builder slot from the load governor pass false, and release the slot themselves.
+    protected CompletableFuture<Lod> queueBuilder(UUID worldId, SectionPosition position, LodBuilder builder, Supplier<Lod> task, boolean acquireSlot)
+    {
+        long key = SectionKey.pack(this.getWorldIndex(worldId), position.getX(), position.getZ());
 
-        if (this.queuedBuilders.containsKey(key)) {
-            return this.queuedBuilders.get(key);
+        CompletableFuture<Lod> existing = this.queuedBuilders.get(key);
+
+        if (existing != null) {
+            return existing;
         }
 
         Scheduler scheduler = this.getScheduler();
 
-        CompletableFuture<Lod> queued;
+        WorldInterface world = this.getWorldInterface(worldId);
 
-        // TODO: Fetch chunk data on region thread, then move to builder thread.
-        if (scheduler.canReadWorldAsync()) {
-            queued = this.getScheduler().runOnSeparateThread(
-                builder::generate
-            );
-        } else {
-            queued = this.getScheduler().runOnRegionThread(
+        int splitQueueDepth = world == null ? 1 : world.getConfig().getInt(DhsConfig.BUILDER_SPLIT_QUEUE_DEPTH, 1);
+
+        // Use all workers for this LOD if the queue is shallow, otherwise leave them for other LODs.
+        builder.setSplitColumns(this.queuedBuilders.size() < splitQueueDepth);
+
+        // Wait for the load governor to let us start.
+        CompletableFuture<Void> slot = acquireSlot ? this.loadGovernor.acquireBuilder() : CompletableFuture.completedFuture(null);
+
+        CompletableFuture<Lod> queued = slot.thenCompose((permit) -> {
+            // TODO: Fetch chunk data on region thread, then move to builder thread.
+            if (scheduler.canReadWorldAsync()) {
+                return this.getScheduler().runOnSeparateThread(
+                    task
+                );
+            }
+
+            return this.getScheduler().runOnRegionThread(
                 worldId,
                 Coordinates.sectionToBlock(position.getX()),
                 Coordinates.sectionToBlock(position.getZ()),
-                builder::generate
+                task
             );
-        }
+        });
 
         queued = queued.thenApply((lod) -> {
+                if (acquireSlot) {
+                    this.loadGovernor.releaseBuilder();
+                }
+
                 this.queuedBuilders.remove(key);
 
                 return lod;
@@ -365,6 +540,10 @@ public class DhSupport implements Configurable
             .exceptionally((exception) -> {
                 exception.printStackTrace();
 
+                if (acquireSlot) {
+                    this.loadGovernor.releaseBuilder();
+                }
+
                 this.queuedBuilders.remove(key);
 
                 return null;
@@ -376,6 +555,174 @@ public class DhSupport implements Configurable
     }
 
     public CompletableFuture<LodModel> getLod(UUID worldId, SectionPosition position)
+    {
+        if (position.getDetailLevel() > 6) {
+            return this.getMipLod(worldId, position);
+        }
+
+        long key = SectionKey.pack(this.getWorldIndex(worldId), position.getX(), position.getZ());
+
+        return this.singleFlight(this.pendingLods, key, () -> this.loadOrGenerateLod(worldId, position));
+    }
+
+    // When the stored LOD was built, or null if it hasn't been built or has been thrown out. Never builds anything.
+    public CompletableFuture<Integer> getLodTimestamp(UUID worldId, SectionPosition position)
+    {
+        if (position.getDetailLevel() > 6) {
+            return this.getLodRepository().loadMipLodTimestampAsync(worldId, position.getDetailLevel(), position.getX(), position.getZ());
+        }
+
+        return this.getLodRepository().loadLodTimestampAsync(worldId, position.getX(), position.getZ());
+    }
+
+    // If someone is already looking for this LOD, wait for their result instead of asking the database again.
+    protected CompletableFuture<LodModel> singleFlight(LongConcurrentMap<CompletableFuture<LodModel>> pendingRequests, long key, Supplier<CompletableFuture<LodModel>> supplier)
+    {
+        CompletableFuture<LodModel> pending = pendingRequests.get(key);
+
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<LodModel> request = new CompletableFuture<>();
+
+        pending = pendingRequests.putIfAbsent(key, request);
+
+        if (pending != null) {
+            return pending;
+        }
+
+        CompletableFuture<LodModel> source;
+
+        // Executors throw right away when they are shutting down. Waiting callers must still hear about it.
+        try {
+            source = supplier.get();
+        } catch (RuntimeException exception) {
+            pendingRequests.remove(key, request);
+
+            request.completeExceptionally(exception);
+
+            return request;
+        }
+
+        source
+            .whenComplete((lodModel, exception) -> {
+                pendingRequests.remove(key, request);
+
+                if (exception != null) {
+                    request.completeExceptionally(exception);
+                } else {
+                    request.complete(lodModel);
+                }
+            });
+
+        return request;
+    }
+
+    protected CompletableFuture<LodModel> getMipLod(UUID worldId, SectionPosition position)
+    {
+        long key = SectionKey.pack(this.getWorldIndex(worldId), position.getX(), position.getZ());
+
+        LongConcurrentMap<CompletableFuture<LodModel>> pendingRequests = this.pendingMipLods.computeIfAbsent(
+            position.getDetailLevel(),
+            (detailLevel) -> new LongConcurrentMap<>()
+        );
+
+        return this.singleFlight(pendingRequests, key, () -> this.getLodRepository()
+            .loadMipLodAsync(worldId, position.getDetailLevel(), position.getX(), position.getZ())
+            .thenComposeAsync((modelFromDb) -> {
+                if (modelFromDb != null) {
+                    return CompletableFuture.completedFuture(modelFromDb);
+                }
+
+                return this.mergeMipLod(worldId, position);
+            }, this.getScheduler().getIoExecutor())
+        );
+    }
+
+    // Build an LOD from the four LODs one detail level below it.
+    protected CompletableFuture<LodModel> mergeMipLod(UUID worldId, SectionPosition position)
+    {
+        WorldInterface world = this.getWorldInterface(worldId);
+
+        // Without a builder, only merge what has already been generated.
+        boolean generateChildren = world != null && !world.getConfig().getString(DhsConfig.BUILDER_TYPE).equalsIgnoreCase("none");
+
+        List<CompletableFuture<LodModel>> children = new ArrayList<>(4);
+
+        for (int relativeX = 0; relativeX < 2; relativeX++) {
+            for (int relativeZ = 0; relativeZ < 2; relativeZ++) {
+                SectionPosition childPosition = new SectionPosition();
+                childPosition.setDetailLevel(position.getDetailLevel() - 1);
+                childPosition.setX(position.getX() * 2 + relativeX);
+                childPosition.setZ(position.getZ() * 2 + relativeZ);
+
+                CompletableFuture<LodModel> child;
+
+                if (generateChildren || childPosition.getDetailLevel() > 6) {
+                    child = this.getLod(worldId, childPosition);
+                } else {
+                    child = this.getLodRepository().loadLodAsync(worldId, childPosition.getX(), childPosition.getZ());
+                }
+
+                // A missing child leaves a hole in the parent, but shouldn't stop us from making it.
+                children.add(child.exceptionally((exception) -> null));
+            }
+        }
+
+        return CompletableFuture.allOf(children.toArray(new CompletableFuture[0]))
+            .thenApplyAsync((nothing) -> {
+                Lod[] childLods = new Lod[children.size()];
+
+                boolean anyChildren = false;
+
+                for (int childNo = 0; childNo < children.size(); childNo++) {
+                    LodModel childModel = children.get(childNo).join();
+
+                    if (childModel == null) {
+                        continue;
+                    }
+
+                    try {
+                        Lod childLod = new Decoder(childModel.getData()).readObject(Lod.class);
+                        childLod.setBeacons(new ArrayList<>(new Decoder(childModel.getBeacons()).readCollection(Beacon.class)));
+
+                        childLods[childNo] = childLod;
+                        anyChildren = true;
+                    } catch (Exception exception) {
+                        this.warning("Could not decode LOD " + childModel + " for merging: " + exception);
+                    }
+                }
+
+                if (!anyChildren) {
+                    return null;
+                }
+
+                return new LodMerger(position, childLods).merge();
+            }, this.getScheduler().getExecutor())
+            .thenCompose((lod) -> {
+                if (lod == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                Encoder lodEncoder = new Encoder();
+                lod.encode(lodEncoder);
+
+                Encoder beaconEncoder = new Encoder();
+                beaconEncoder.writeCollection(lod.getBeacons());
+
+                return this.lodRepository.saveMipLodAsync(
+                    worldId,
+                    position.getDetailLevel(),
+                    position.getX(),
+                    position.getZ(),
+                    lodEncoder.toByteArray(),
+                    beaconEncoder.toByteArray()
+                );
+            });
+    }
+
+    protected CompletableFuture<LodModel> loadOrGenerateLod(UUID worldId, SectionPosition position)
     {
         return this.getLodRepository()
             .loadLodAsync(worldId, position.getX(), position.getZ())
@@ -386,20 +733,35 @@ public class DhSupport implements Configurable
                 }
 
                 // Otherwise generate a new one.
-                return this.generateLod(worldId, position);
-            });
+                return this.generateLod(worldId, position, true);
+            }, this.getScheduler().getIoExecutor());
     }
 
     protected CompletableFuture<LodModel> generateLod(UUID worldId, SectionPosition position)
+    {
+        return this.generateLod(worldId, position, false);
+    }
+
+    // Throttled requests are not allowed to generate new chunks while the server is overloaded.
+    protected CompletableFuture<LodModel> generateLod(UUID worldId, SectionPosition position, boolean throttled)
     {
         this.joinPauseState();
 
+        // Take a builder slot before loading any chunks, so that loaded chunks don't sit around waiting for one.
+        return this.loadGovernor.acquireBuilder()
+            .thenComposeAsync((permit) -> this.loadChunksAndBuildLod(worldId, position, throttled), this.getScheduler().getIoExecutor())
+            .whenComplete((lodModel, exception) -> this.loadGovernor.releaseBuilder());
+    }
+
+    protected CompletableFuture<LodModel> loadChunksAndBuildLod(UUID worldId, SectionPosition position, boolean throttled)
+    {
         int worldX = Coordinates.sectionToBlock(position.getX());
         int worldZ = Coordinates.sectionToBlock(position.getZ());
 
         WorldInterface world = this.getWorldInterface(worldId).newInstance();
 
-        boolean generateNewChunks = world.getConfig().getBool(DhsConfig.GENERATE_NEW_CHUNKS, true);
+        boolean generateNewChunks = world.getConfig().getBool(DhsConfig.GENERATE_NEW_CHUNKS, true)
+            && (!throttled || this.loadGovernor.isChunkGenerationAllowed());
 
         Map<String, CompletableFuture<Boolean>> loads = new HashMap<>();
 
@@ -452,11 +814,21 @@ public class DhSupport implements Configurable
                     return CompletableFuture.completedFuture(null);
                 }
 
+                // Remember how fresh the chunks were, so that we can tell later if they have changed.
+                int sourceTimestamp = this.getSectionSourceTimestamp(world, position.getX(), position.getZ());
+
                 // No LOD was found. Start building a new one.
-                CompletableFuture<Lod> lodFuture = this.queueBuilder(worldId, position, this.getBuilder(world, position));
+                LodBuilder builder = this.getBuilder(world, position);
+
+                CompletableFuture<Lod> lodFuture = this.queueBuilder(worldId, position, builder, builder::generate, false);
 
                 // Combine the LOD and beacons and save the result in the database.
                 return lodFuture.thenApply((lod) -> {
+                    // Remember what the chunks looked like, so that changes can be spotted when they are unloaded.
+                    if (this.isChunkChangeDetectionEnabled(world)) {
+                        this.saveChunkHashes(world, position);
+                    }
+
                     // Discard the chunks we loaded.
                     this.getScheduler().runOnRegionThread(worldId, worldX, worldZ, () -> {
                         for (String key : loads.keySet()) {
@@ -484,11 +856,99 @@ public class DhSupport implements Configurable
                         position.getX(),
                         position.getZ(),
                         lodEncoder.toByteArray(),
-                        beaconEncoder.toByteArray()
+                        beaconEncoder.toByteArray(),
+                        sourceTimestamp
                     );
                 })
-                .thenCompose((f) -> f); // Unwrap the nested future.
-            });
+                .thenCompose((f) -> f) // Unwrap the nested future.
+                .thenApply((lodModel) -> {
+                    int maxDetailLevel = world.getConfig().getInt(DhsConfig.MAX_DETAIL_LEVEL, 6);
+
+                    // Merged LODs that include this one are now out of date.
+                    if (lodModel != null && maxDetailLevel > 6) {
+                        this.lodRepository.deleteMipLodsAsync(worldId, position.getX(), position.getZ(), maxDetailLevel);
+                    }
+
+                    return lodModel;
+                });
+            }, this.getScheduler().getIoExecutor());
+    }
+
+    public boolean isChunkChangeDetectionEnabled(WorldInterface world)
+    {
+        return !world.getConfig().getString(DhsConfig.CHANGE_DETECTION, "events").equalsIgnoreCase("events");
+    }
+
+    protected void saveChunkHashes(WorldInterface world, SectionPosition position)
+    {
+        boolean[] chunks = new boolean[16];
+
+        Arrays.fill(chunks, true);
+
+        this.saveChunkHashes(world, position, chunks);
+    }
+
+    // Only the chunks flagged in the array are hashed, indexed by relative chunk X * 4 + relative chunk Z.
+    protected void saveChunkHashes(WorldInterface world, SectionPosition position, boolean[] chunks)
+    {
+        int worldX = Coordinates.sectionToBlock(position.getX());
+        int worldZ = Coordinates.sectionToBlock(position.getZ());
+
+        // Snapshots the builder didn't already take must be taken on the region thread.
+        this.getScheduler().runOnRegionThread(world.getId(), worldX, worldZ, () -> {
+            int[] hashes = new int[16];
+
+            for (int xMultiplier = 0; xMultiplier < 4; xMultiplier++) {
+                for (int zMultiplier = 0; zMultiplier < 4; zMultiplier++) {
+                    if (!chunks[xMultiplier * 4 + zMultiplier]) {
+                        continue;
+                    }
+
+                    hashes[xMultiplier * 4 + zMultiplier] = world.getSurfaceHash(worldX + 16 * xMultiplier, worldZ + 16 * zMultiplier);
+                }
+            }
+
+            return hashes;
+        }).thenAccept((hashes) -> {
+            int chunkX = Coordinates.blockToChunk(worldX);
+            int chunkZ = Coordinates.blockToChunk(worldZ);
+
+            for (int xMultiplier = 0; xMultiplier < 4; xMultiplier++) {
+                for (int zMultiplier = 0; zMultiplier < 4; zMultiplier++) {
+                    if (!chunks[xMultiplier * 4 + zMultiplier]) {
+                        continue;
+                    }
+
+                    this.lodRepository.saveChunkHashAsync(world.getId(), chunkX + xMultiplier, chunkZ + zMultiplier, hashes[xMultiplier * 4 + zMultiplier]);
+                }
+            }
+        });
+    }
+
+    // Compare a chunk's surface hash with the one stored when its LOD was last built, and mark the chunk dirty if it has changed.
+    public CompletableFuture<Boolean> checkChunkHash(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        return this.lodRepository.swapChunkHashAsync(worldId, chunkX, chunkZ, hash).thenApply((previous) -> {
+            // No LOD has been built here yet, so there is nothing to update.
+            if (previous == null || previous == hash) {
+                return false;
+            }
+
+            int[] xs = new int[16 * 16];
+            int[] zs = new int[16 * 16];
+
+            int worldX = Coordinates.chunkToBlock(chunkX);
+            int worldZ = Coordinates.chunkToBlock(chunkZ);
+
+            for (int i = 0; i < xs.length; i++) {
+                xs[i] = worldX + (i >> 4);
+                zs[i] = worldZ + (i & 15);
+            }
+
+            this.touchLods(worldId, xs, zs, xs.length, "chunk changed");
+
+            return true;
+        });
     }
 
     public void touchLod(UUID worldId, int x, int z, @Nullable String reason)
@@ -496,29 +956,31 @@ public class DhSupport implements Configurable
         int sectionX = Coordinates.blockToSection(x);
         int sectionZ = Coordinates.blockToSection(z);
 
-        LodModel lodModel = LodModel.create()
-            .setWorldId(worldId)
-            .setX(sectionX)
-            .setZ(sectionZ);
+        long key = SectionKey.pack(this.getWorldIndex(worldId), sectionX, sectionZ);
 
-        String key = lodModel.toString();
+        int columnNo = Math.floorMod(x, Lod.width) * Lod.width + Math.floorMod(z, Lod.width);
 
         if (this.touchedLods.containsKey(key)) {
+            this.markDirtyColumn(key, columnNo);
             return;
         }
 
         WorldInterface world = this.getWorldInterface(worldId);
 
         if (world == null) {
-            this.debug("Ignoring touched LOD for unloaded world " + worldId + " " + x + " " + z
-                + (reason == null ? "." : ": " + reason));
+            if (this.isDebugEnabled()) {
+                this.debug("Ignoring touched LOD for unloaded world " + worldId + " " + x + " " + z
+                    + (reason == null ? "." : ": " + reason));
+            }
             return;
         }
 
-        this.debug("Touched LOD at " + world.getName() + " " + x + " " + z
-            + (reason == null ? "." : ": " + reason));
+        if (this.isDebugEnabled()) {
+            this.debug("Touched LOD at " + world.getName() + " " + x + " " + z
+                + (reason == null ? "." : ": " + reason));
+        }
 
-        this.touchedLods.put(key, lodModel);
+        this.markDirtyColumn(key, columnNo);
     }
 
     public void touchLod(UUID worldId, int x, int z)
@@ -526,142 +988,427 @@ public class DhSupport implements Configurable
         this.touchLod(worldId, x, z, null);
     }
 
+    // Touch many blocks at once, like for an explosion. Only the first count entries of xs and zs are used.
+    public void touchLods(UUID worldId, int[] xs, int[] zs, int count, @Nullable String reason)
+    {
+        if (count == 0) {
+            return;
+        }
+
+        int worldIndex = this.getWorldIndex(worldId);
+
+        // Group the blocks by section before touching anything. There are usually only a few, so a plain list will do.
+        long[] sectionKeys = new long[4];
+        long[][] sectionColumns = new long[4][];
+        int sectionCount = 0;
+
+        for (int i = 0; i < count; i++) {
+            long key = SectionKey.pack(worldIndex, Coordinates.blockToSection(xs[i]), Coordinates.blockToSection(zs[i]));
+
+            int sectionNo = 0;
+
+            while (sectionNo < sectionCount && sectionKeys[sectionNo] != key) {
+                sectionNo++;
+            }
+
+            if (sectionNo == sectionCount) {
+                if (sectionCount == sectionKeys.length) {
+                    sectionKeys = Arrays.copyOf(sectionKeys, sectionCount * 2);
+                    sectionColumns = Arrays.copyOf(sectionColumns, sectionCount * 2);
+                }
+
+                sectionKeys[sectionNo] = key;
+                sectionColumns[sectionNo] = new long[Lod.width * Lod.width / 64];
+                sectionCount++;
+            }
+
+            int columnNo = Math.floorMod(xs[i], Lod.width) * Lod.width + Math.floorMod(zs[i], Lod.width);
+
+            sectionColumns[sectionNo][columnNo >> 6] |= 1L << (columnNo & 63);
+        }
+
+        WorldInterface world = this.getWorldInterface(worldId);
+
+        if (world == null) {
+            if (this.isDebugEnabled()) {
+                this.debug("Ignoring " + count + " touched blocks for unloaded world " + worldId
+                    + (reason == null ? "." : ": " + reason));
+            }
+            return;
+        }
+
+        if (this.isDebugEnabled()) {
+            this.debug("Touched " + count + " blocks in " + sectionCount + " LODs in " + world.getName()
+                + (reason == null ? "." : ": " + reason));
+        }
+
+        for (int sectionNo = 0; sectionNo < sectionCount; sectionNo++) {
+            this.markDirtyColumns(sectionKeys[sectionNo], sectionColumns[sectionNo]);
+        }
+    }
+
+    protected void markDirtyColumns(long key, long[] columns)
+    {
+        while (true) {
+            long[] dirtyColumns = this.touchedLods.computeIfAbsent(key, (k) -> new long[Lod.width * Lod.width / 64]);
+
+            synchronized (dirtyColumns) {
+                // If updateTouchedLods took this set while we were waiting, start a new one.
+                if (this.touchedLods.get(key) != dirtyColumns) {
+                    continue;
+                }
+
+                for (int i = 0; i < dirtyColumns.length; i++) {
+                    dirtyColumns[i] |= columns[i];
+                }
+
+                return;
+            }
+        }
+    }
+
+    protected void markDirtyColumn(long key, int columnNo)
+    {
+        while (true) {
+            long[] dirtyColumns = this.touchedLods.computeIfAbsent(key, (k) -> new long[Lod.width * Lod.width / 64]);
+
+            synchronized (dirtyColumns) {
+                // If updateTouchedLods took this set while we were waiting, start a new one.
+                if (this.touchedLods.get(key) != dirtyColumns) {
+                    continue;
+                }
+
+                dirtyColumns[columnNo >> 6] |= 1L << (columnNo & 63);
+
+                return;
+            }
+        }
+    }
+
     public void updateTouchedLods()
     {
         if (this.isPaused()) {
             return;
         }
 
-        for (String key : this.touchedLods.keySet()) {
-            LodModel lodModelToDelete = this.touchedLods.get(key);
-            this.touchedLods.remove(key);
+        long now = System.currentTimeMillis();
 
-            if (lodModelToDelete == null) {
-                continue;
+        long cooldown = this.getConfig().getInt(DhsConfig.LOD_REFRESH_COOLDOWN, 10) * 1000L;
+        int budget = this.getConfig().getInt(DhsConfig.LOD_REFRESH_BUDGET, 32);
+
+        // Forget about sections that have cooled down and not been touched since.
+        for (long key : this.lastLodRefreshes.keys()) {
+            Long lastRefresh = this.lastLodRefreshes.get(key);
+
+            if (lastRefresh != null && now - lastRefresh >= cooldown && !this.touchedLods.containsKey(key)) {
+                this.lastLodRefreshes.remove(key, lastRefresh);
             }
+        }
+
+        // Sections that were refreshed the longest time ago go first, so that busy sections can't starve the rest.
+        List<Long> keys = new ArrayList<>();
+
+        for (long key : this.touchedLods.keys()) {
+            keys.add(key);
+        }
+
+        keys.sort(Comparator.comparingLong((key) -> {
+            Long lastRefresh = this.lastLodRefreshes.get(key);
 
-            WorldInterface world = this.getWorldInterface(lodModelToDelete.getWorldId());
+            return lastRefresh == null ? 0 : lastRefresh;
+        }));
+
+        int started = 0;
+
+        for (long key : keys) {
+            UUID worldId = this.getWorldIdByIndex(SectionKey.getWorldIndex(key));
+            int sectionX = SectionKey.getX(key);
+            int sectionZ = SectionKey.getZ(key);
+
+            WorldInterface world = worldId == null ? null : this.getWorldInterface(worldId);
 
             if (world == null) {
-                this.debug("Dropping touched LOD for unloaded world " + lodModelToDelete.getWorldId() + " "
-                    + lodModelToDelete.getX() + " " + lodModelToDelete.getZ() + ".");
+                this.touchedLods.remove(key);
+
+                this.debug("Dropping touched LOD for unloaded world " + worldId + " "
+                    + sectionX + " " + sectionZ + ".");
+                continue;
+            }
+
+            // Leave the rest for the next round. Touches keep adding up in the meantime.
+            if (budget > 0 && started >= budget) {
+                break;
+            }
+
+            // Recently refreshed sections stay touched until their cooldown has passed, so a section that keeps changing
+            // is only rebuilt once per cooldown.
+            Long lastRefresh = this.lastLodRefreshes.get(key);
+
+            if (lastRefresh != null && now - lastRefresh < cooldown) {
+                continue;
+            }
+
+            // Still working on the previous refresh. Keep collecting changes until it's done.
+            if (this.refreshingLods.containsKey(key)) {
+                continue;
+            }
+
+            long[] dirtyColumns = this.touchedLods.get(key);
+
+            if (dirtyColumns == null) {
                 continue;
             }
 
-            this.debug("Changes detected in " + world.getName() + " " + lodModelToDelete.getX() + " " + lodModelToDelete.getZ() + ".");
+            synchronized (dirtyColumns) {
+                if (!this.touchedLods.remove(key, dirtyColumns)) {
+                    continue;
+                }
+            }
+
+            this.lastLodRefreshes.put(key, now);
+
+            started++;
+
+            int dirtyCount = 0;
+
+            for (long bits : dirtyColumns) {
+                dirtyCount += Long.bitCount(bits);
+            }
+
+            this.debug("Changes detected in " + dirtyCount + " columns of " + world.getName() + " " + sectionX + " " + sectionZ + ".");
+
+            SectionPosition position = new SectionPosition();
+            position.setDetailLevel(6);
+            position.setX(sectionX);
+            position.setZ(sectionZ);
+
+            boolean patch = dirtyCount <= world.getConfig().getInt(DhsConfig.LOD_PATCH_MAX_COLUMNS, 1024);
+
+            this.singleFlight(this.refreshingLods, key, () -> {
+                    if (!patch) {
+                        return this.rebuildLod(worldId, position);
+                    }
+
+                    // Patching rebuilds the changed columns only. Fall back to a full rebuild when too much has changed, or if patching fails.
+                    return this.patchLod(worldId, position, dirtyColumns)
+                        .handle((patchedLodModel, exception) -> {
+                            if (exception == null) {
+                                return CompletableFuture.completedFuture(patchedLodModel);
+                            }
 
-            this.getLodRepository().lodExistsAsync(lodModelToDelete.getWorldId(), lodModelToDelete.getX(), lodModelToDelete.getZ()).thenAccept((exists) -> {
+                            this.debug("Could not patch LOD " + world.getName() + " " + sectionX + " " + sectionZ + ". Rebuilding it instead: " + exception.getMessage());
+
+                            return this.rebuildLod(worldId, position);
+                        })
+                        .thenCompose((f) -> f); // Unwrap the nested future.
+                })
+                .thenAcceptAsync((newLodModel) -> {
+                    if (newLodModel != null) {
+                        this.sendLodUpdate(world, sectionX, sectionZ, newLodModel);
+                    }
+                }, this.getScheduler().getIoExecutor());
+        }
+    }
+
+    // Build a stored LOD again from scratch. Resolves to null if there was no LOD to begin with.
+    // The old LOD stays in the database, and keeps being served, until the new one replaces it.
+    protected CompletableFuture<LodModel> rebuildLod(UUID worldId, SectionPosition position)
+    {
+        return this.getLodRepository()
+            .lodExistsAsync(worldId, position.getX(), position.getZ())
+            .thenComposeAsync((exists) -> {
                 if (!exists) {
-                    return;
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                return this.generateLod(worldId, position, true);
+            }, this.getScheduler().getIoExecutor());
+    }
+
+    // Rebuild only the given columns of a stored LOD. Resolves to null if there is no stored LOD to patch.
+    protected CompletableFuture<LodModel> patchLod(UUID worldId, SectionPosition position, long[] dirtyColumns)
+    {
+        return this.getLodRepository()
+            .loadLodAsync(worldId, position.getX(), position.getZ())
+            .thenComposeAsync((storedLodModel) -> {
+                if (storedLodModel == null) {
+                    return CompletableFuture.completedFuture(null);
+                }
+
+                WorldInterface world = this.getWorldInterface(worldId).newInstance();
+
+                LodBuilder builder = this.getBuilder(world, position);
+
+                if (builder == null) {
+                    throw new IllegalStateException("No LOD builder available");
+                }
+
+                int offsetX = Coordinates.sectionToBlock(position.getX());
+                int offsetZ = Coordinates.sectionToBlock(position.getZ());
+
+                // The columns were changed just now, so their chunks should still be loaded. If not, let a full rebuild deal with it.
+                for (int columnNo = 0; columnNo < Lod.width * Lod.width; columnNo++) {
+                    if ((dirtyColumns[columnNo >> 6] & (1L << (columnNo & 63))) != 0 && !world.isChunkLoaded(offsetX + columnNo / Lod.width, offsetZ + columnNo % Lod.width)) {
+                        throw new IllegalStateException("Chunk is no longer loaded");
+                    }
                 }
 
-                this.getLodRepository().deleteLodAsync(lodModelToDelete.getWorldId(), lodModelToDelete.getX(), lodModelToDelete.getZ())
-                    .thenAccept((deleted) -> {
-                        if (!deleted) {
-                            this.warning("Could not delete LOD " + world.getName() + " " + lodModelToDelete.getX() + " " + lodModelToDelete.getZ() + ".");
-                            return;
+                Lod storedLod = new Decoder(storedLodModel.getData()).readObject(Lod.class);
+
+                int sourceTimestamp = this.getSectionSourceTimestamp(world, position.getX(), position.getZ());
+
+                return this.queueBuilder(worldId, position, builder, () -> builder.patch(storedLod, dirtyColumns))
+                    .thenCompose((lod) -> {
+                        if (lod == null) {
+                            throw new IllegalStateException("LOD builder failed");
                         }
 
-                        SectionPosition position = new SectionPosition();
-                        position.setDetailLevel(6);
-                        position.setX(lodModelToDelete.getX());
-                        position.setZ(lodModelToDelete.getZ());
+                        Encoder lodEncoder = new Encoder();
+                        lod.encode(lodEncoder);
 
-                        this.getLod(lodModelToDelete.getWorldId(), position)
-                            .thenAcceptAsync((newLodModel) -> {
-                                Configuration worldConfig = world.getConfig();
+                        Encoder beaconEncoder = new Encoder();
+                        beaconEncoder.writeCollection(lod.getBeacons());
 
-                                // If this is false, then it will be false for all players as well.
-                                boolean updatesEnabled = worldConfig.getBool(DhsConfig.REAL_TIME_UPDATES_ENABLED);
+                        return this.lodRepository.saveLodAsync(
+                            worldId,
+                            position.getX(),
+                            position.getZ(),
+                            lodEncoder.toByteArray(),
+                            beaconEncoder.toByteArray(),
+                            sourceTimestamp
+                        );
+                    })
+                    .thenApply((lodModel) -> {
+                        int maxDetailLevel = world.getConfig().getInt(DhsConfig.MAX_DETAIL_LEVEL, 6);
 
-                                if (!updatesEnabled) {
-                                    this.debug("New LOD " + world.getName() + " " + lodModelToDelete.getX() + " " + lodModelToDelete.getZ() + " generated, but real-time updates are disabled.");
-                                    return;
-                                }
+                        // Merged LODs that include this one are now out of date.
+                        if (lodModel != null && maxDetailLevel > 6) {
+                            this.lodRepository.deleteMipLodsAsync(worldId, position.getX(), position.getZ(), maxDetailLevel);
+                        }
 
-                                String levelKeyPrefix = worldConfig.getString(DhsConfig.LEVEL_KEY_PREFIX);
-                                String levelKey = world.getKey();
+                        // The patched chunks are the only ones known to be loaded, so only their hashes are refreshed.
+                        if (lodModel != null && this.isChunkChangeDetectionEnabled(world)) {
+                            boolean[] patchedChunks = new boolean[16];
 
-                                if (levelKeyPrefix != null) {
-                                    levelKey = levelKeyPrefix + levelKey;
+                            for (int columnNo = 0; columnNo < Lod.width * Lod.width; columnNo++) {
+                                if ((dirtyColumns[columnNo >> 6] & (1L << (columnNo & 63))) != 0) {
+                                    patchedChunks[(columnNo / Lod.width / 16) * 4 + (columnNo % Lod.width) / 16] = true;
                                 }
+                            }
 
-                                int lodChunkX = Coordinates.sectionToChunk(lodModelToDelete.getX());
-                                int lodChunkZ = Coordinates.sectionToChunk(lodModelToDelete.getZ());
+                            this.saveChunkHashes(world, position, patchedChunks);
+                        }
+
+                        return lodModel;
+                    });
+            }, this.getScheduler().getIoExecutor());
+    }
 
-                                int playersInRangeCount = 0;
-                                int playersOutOfRangeCount = 0;
-                                int playersWithoutDhCount = 0;
+    protected void sendLodUpdate(WorldInterface world, int sectionX, int sectionZ, LodModel newLodModel)
+    {
+        Configuration worldConfig = world.getConfig();
 
-                                org.bukkit.World bukkitWorld = Bukkit.getWorld(newLodModel.getWorldId());
+        // If this is false, then it will be false for all players as well.
+        boolean updatesEnabled = worldConfig.getBool(DhsConfig.REAL_TIME_UPDATES_ENABLED);
 
-                                if (bukkitWorld == null) {
-                                    this.debug("Skipping real-time LOD update for unloaded world " + newLodModel.getWorldId() + ".");
-                                    return;
-                                }
+        if (!updatesEnabled) {
+            this.debug("New LOD " + world.getName() + " " + sectionX + " " + sectionZ + " generated, but real-time updates are disabled.");
+            return;
+        }
 
-                                // TODO: Don't use Bukkit classes.
-                                for (Player player : bukkitWorld.getPlayers()) {
-                                    Configuration playerConfig = this.getPlayerConfiguration(player.getUniqueId());
+        String levelKeyPrefix = worldConfig.getString(DhsConfig.LEVEL_KEY_PREFIX);
+        String levelKey = world.getKey();
 
-                                    // No config for this player? Probably not using DH.
-                                    if (playerConfig == null) {
-                                        playersWithoutDhCount++;
-                                        continue;
-                                    }
+        if (levelKeyPrefix != null) {
+            levelKey = levelKeyPrefix + levelKey;
+        }
 
-                                    if (!playerConfig.getBool(DhsConfig.DISTANT_GENERATION_ENABLED) || !playerConfig.getBool(DhsConfig.REAL_TIME_UPDATES_ENABLED)) {
-                                        continue;
-                                    }
+        int lodChunkX = Coordinates.sectionToChunk(sectionX);
+        int lodChunkZ = Coordinates.sectionToChunk(sectionZ);
 
-                                    int updatesRadius = playerConfig.getInt(DhsConfig.REAL_TIME_UPDATE_RADIUS);
+        int playersInRangeCount = 0;
+        int playersOutOfRangeCount = 0;
+        int playersWithoutDhCount = 0;
 
-                                    int playerChunkX = Coordinates.blockToChunk(player.getLocation().getBlockX());
-                                    int playerChunkZ = Coordinates.blockToChunk(player.getLocation().getBlockZ());
+        @Nullable
+        List<byte[]> encodedChunks = null;
+        int chunkBufferIdPosition = 0;
 
-                                    int distanceX = Math.abs(Math.max(lodChunkX, playerChunkX) - Math.min(lodChunkX, playerChunkX));
-                                    int distanceZ = Math.abs(Math.max(lodChunkZ, playerChunkZ) - Math.min(lodChunkZ, playerChunkZ));
+        @Nullable
+        byte[] encodedUpdate = null;
+        int updateBufferIdPosition = 0;
 
-                                    // Update outside of player's range?
-                                    if (distanceX > updatesRadius || distanceZ > updatesRadius) {
-                                        playersOutOfRangeCount++;
-                                        continue;
-                                    }
+        // Player update radiuses never exceed the server's, so nobody further away than this can be interested.
+        int maxUpdatesRadius = worldConfig.getInt(DhsConfig.REAL_TIME_UPDATE_RADIUS);
 
-                                    playersInRangeCount++;
+        for (UUID playerId : this.playerIndex.getPlayersNear(newLodModel.getWorldId(), lodChunkX, lodChunkZ, maxUpdatesRadius)) {
+            Configuration playerConfig = this.getPlayerConfiguration(playerId);
 
-                                    int myBufferId = playerConfig.increment("buffer-id");
+            // No config for this player? Probably not using DH.
+            if (playerConfig == null) {
+                playersWithoutDhCount++;
+                continue;
+            }
 
-                                    FullDataPartialUpdateMessage partialUpdateMessage = new FullDataPartialUpdateMessage();
-                                    partialUpdateMessage.setLevelKey(levelKey);
-                                    partialUpdateMessage.setBufferId(myBufferId);
-                                    partialUpdateMessage.setBeacons(newLodModel.getBeacons());
+            if (!playerConfig.getBool(DhsConfig.DISTANT_GENERATION_ENABLED) || !playerConfig.getBool(DhsConfig.REAL_TIME_UPDATES_ENABLED)) {
+                continue;
+            }
 
-                                    byte[] data = newLodModel.getData();
+            int updatesRadius = playerConfig.getInt(DhsConfig.REAL_TIME_UPDATE_RADIUS);
 
-                                    int chunkCount = (int) Math.ceil((double) data.length / LodHandler.CHUNK_SIZE);
+            // Update outside of player's range?
+            if (!this.playerIndex.isNear(playerId, newLodModel.getWorldId(), lodChunkX, lodChunkZ, updatesRadius)) {
+                playersOutOfRangeCount++;
+                continue;
+            }
 
-                                    for (int chunkNo = 0; chunkNo < chunkCount; chunkNo++) {
-                                        FullDataChunkMessage chunkResponse = new FullDataChunkMessage();
-                                        chunkResponse.setBufferId(myBufferId);
-                                        chunkResponse.setIsFirst(chunkNo == 0);
-                                        chunkResponse.setData(Arrays.copyOfRange(
-                                            data,
-                                            LodHandler.CHUNK_SIZE * chunkNo,
-                                            Math.min(LodHandler.CHUNK_SIZE * chunkNo + LodHandler.CHUNK_SIZE, data.length)
-                                        ));
+            playersInRangeCount++;
 
-                                        this.pluginMessageHandler.sendPluginMessage(player.getUniqueId(), chunkResponse);
-                                    }
+            // The messages are the same for everyone except for the buffer ID, so only encode them once.
+            if (encodedChunks == null) {
+                encodedChunks = new ArrayList<>();
 
-                                    this.pluginMessageHandler.sendPluginMessage(player.getUniqueId(), partialUpdateMessage);
-                                }
+                byte[] data = newLodModel.getData();
 
-                                this.debug("Updated LOD " + world.getName() + " " + lodModelToDelete.getX() + " " + lodModelToDelete.getZ() + " sent to " + playersInRangeCount + " players. Found " + playersOutOfRangeCount + " players out of range, and " + playersWithoutDhCount + " players without DH.");
-                            });
-                    });
-            });
+                int chunkCount = (int) Math.ceil((double) data.length / LodHandler.CHUNK_SIZE);
+
+                for (int chunkNo = 0; chunkNo < chunkCount; chunkNo++) {
+                    FullDataChunkMessage chunkResponse = new FullDataChunkMessage();
+                    chunkResponse.setIsFirst(chunkNo == 0);
+                    chunkResponse.setData(Arrays.copyOfRange(
+                        data,
+                        LodHandler.CHUNK_SIZE * chunkNo,
+                        Math.min(LodHandler.CHUNK_SIZE * chunkNo + LodHandler.CHUNK_SIZE, data.length)
+                    ));
+
+                    chunkBufferIdPosition = this.pluginMessageHandler.getBufferIdPosition(chunkResponse);
+
+                    encodedChunks.add(this.pluginMessageHandler.encodePluginMessage(chunkResponse));
+                }
+
+                FullDataPartialUpdateMessage partialUpdateMessage = new FullDataPartialUpdateMessage();
+                partialUpdateMessage.setLevelKey(levelKey);
+                partialUpdateMessage.setBeacons(newLodModel.getBeacons());
+
+                updateBufferIdPosition = this.pluginMessageHandler.getBufferIdPosition(partialUpdateMessage);
+
+                encodedUpdate = this.pluginMessageHandler.encodePluginMessage(partialUpdateMessage);
+            }
+
+            if (encodedUpdate == null || encodedChunks.contains(null)) {
+                break;
+            }
+
+            int myBufferId = playerConfig.increment("buffer-id");
+
+            for (byte[] encodedChunk : encodedChunks) {
+                this.pluginMessageHandler.sendPluginMessage(playerId, encodedChunk, chunkBufferIdPosition, myBufferId);
+            }
+
+            this.pluginMessageHandler.sendPluginMessage(playerId, encodedUpdate, updateBufferIdPosition, myBufferId);
         }
+
+        this.debug("Updated LOD " + world.getName() + " " + sectionX + " " + sectionZ + " sent to " + playersInRangeCount + " players. Found " + playersOutOfRangeCount + " players out of range, and " + playersWithoutDhCount + " nearby players without DH.");
     }
 
     public boolean isPreGenerating(WorldInterface world)
@@ -670,6 +1417,11 @@ public class DhSupport implements Configurable
     }
 
     public void preGenerate(WorldInterface world, int centerX, int centerZ, int radius, boolean force)
+    {
+        this.preGenerate(world, centerX, centerZ, radius, force, false);
+    }
+
+    public void preGenerate(WorldInterface world, int centerX, int centerZ, int radius, boolean force, boolean incremental)
     {
         if (this.isPreGenerating(world)) {
             this.info("Cannot run multiple pre-generators in the same world. Stopping current task for " + world.getName() + "...");
@@ -677,15 +1429,42 @@ public class DhSupport implements Configurable
             this.stopPreGenerator(world);
         }
 
-        this.preGenerators.put(world.getId(), new PreGenerator(this, world, centerX, centerZ, radius, force));
+        PreGenerator preGenerator = new PreGenerator(this, world, centerX, centerZ, radius, force);
+        preGenerator.setIncremental(incremental);
 
-        this.getScheduler().runOnSeparateThread(() -> {
-            this.preGenerators.get(world.getId()).run();
+        this.startPreGenerator(world, preGenerator);
+    }
+
+    protected void startPreGenerator(WorldInterface world, PreGenerator preGenerator)
+    {
+        this.preGenerators.put(world.getId(), preGenerator);
+
+        this.getScheduler().runOnIoThread(() -> {
+            preGenerator.run();
 
             return null;
         });
     }
 
+    public boolean resumePreGenerator(WorldInterface world, boolean onlyIfRunning)
+    {
+        if (this.isPreGenerating(world)) {
+            return false;
+        }
+
+        PreGenJobModel job = this.getPreGenJobRepository().loadJob(world.getId());
+
+        if (job == null || (onlyIfRunning && !job.getRunning())) {
+            return false;
+        }
+
+        this.info("Resuming pre-generation in " + world.getName() + " at step " + job.getStep() + ".");
+
+        this.startPreGenerator(world, new PreGenerator(this, world, job));
+
+        return true;
+    }
+
     public @Nullable PreGenerator getPreGenerator(WorldInterface world)
     {
         return this.preGenerators.get(world.getId());
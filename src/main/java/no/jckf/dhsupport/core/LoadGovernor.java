@@ -0,0 +1,262 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core;
+
+import no.jckf.dhsupport.core.configuration.Configuration;
+import no.jckf.dhsupport.core.configuration.DhsConfig;
+import no.jckf.dhsupport.core.scheduling.TickMonitor;
+
+import javax.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+// Keeps LOD generation from pushing the server over its tick budget.
+// Every update compares the average tick time and the number of builders waiting for a slot to their targets, and adjusts a capacity
+// value between 0 and 1. The capacity decides how many builders may run at once and how fast pre-generation may go.
+// When capacity gets low enough we are overloaded: pre-generation waits, and players only get LODs for chunks that
+// already exist.
+public class LoadGovernor
+{
+    protected static final double MIN_CAPACITY = 0.05;
+
+    protected static final double OVERLOADED_CAPACITY = 0.25;
+
+    protected static final double DECREASE_FACTOR = 0.7;
+
+    protected static final double INCREASE = 0.05;
+
+    // Only grow again once tick times are comfortably below the target.
+    protected static final double RECOVERY_MARGIN = 0.9;
+
+    // Only grow again once the builder queue has drained to this share of its limit.
+    protected static final double QUEUE_RECOVERY_MARGIN = 0.5;
+
+    protected DhSupport dhSupport;
+
+    protected boolean enabled = false;
+
+    protected double targetTickTime;
+
+    protected int maxQueueDepth;
+
+    protected int maxBuilders = Runtime.getRuntime().availableProcessors();
+
+    protected double capacity = 1;
+
+    @Nullable
+    protected CompletableFuture<?> overload;
+
+    protected int activeBuilders = 0;
+
+    protected Queue<CompletableFuture<Void>> waitingBuilders = new ArrayDeque<>();
+
+    public LoadGovernor(DhSupport dhSupport)
+    {
+        this.dhSupport = dhSupport;
+    }
+
+    // Read on every update, so that config reloads take effect without a restart.
+    protected synchronized void configure(Configuration config)
+    {
+        this.enabled = config.getBool(DhsConfig.AUTO_THROTTLE, true);
+        this.targetTickTime = config.getInt(DhsConfig.AUTO_THROTTLE_TARGET_MSPT, 45);
+        this.maxBuilders = Math.max(1, config.getInt(DhsConfig.SCHEDULER_THREADS, Runtime.getRuntime().availableProcessors()));
+        this.maxQueueDepth = config.getInt(DhsConfig.AUTO_THROTTLE_MAX_QUEUE_DEPTH, this.maxBuilders * 16);
+    }
+
+    public void update()
+    {
+        this.configure(this.dhSupport.getConfig());
+
+        if (!this.enabled) {
+            synchronized (this) {
+                this.capacity = 1;
+            }
+
+            this.resume();
+            this.releaseBuilders();
+
+            return;
+        }
+
+        @Nullable
+        TickMonitor tickMonitor = this.dhSupport.getTickMonitor();
+
+        @Nullable
+        Double tickTime = tickMonitor == null ? null : tickMonitor.getAverageTickTime();
+
+        int queueDepth = this.getWaitingBuilders();
+
+        boolean tickOverTarget = tickTime != null && tickTime > this.targetTickTime;
+        boolean queueOverTarget = queueDepth > this.maxQueueDepth;
+        boolean underTarget = (tickTime == null || tickTime < this.targetTickTime * RECOVERY_MARGIN) && queueDepth <= this.maxQueueDepth * QUEUE_RECOVERY_MARGIN;
+
+        boolean wasOverloaded;
+        boolean isOverloaded;
+
+        synchronized (this) {
+            wasOverloaded = this.isOverloaded();
+
+            if (tickOverTarget) {
+                this.capacity = Math.max(MIN_CAPACITY, this.capacity * DECREASE_FACTOR);
+            } else if (queueOverTarget) {
+                // Throttling makes the queue longer, so a long queue alone must not feed itself into an overload.
+                this.capacity = Math.max(OVERLOADED_CAPACITY, this.capacity * DECREASE_FACTOR);
+            } else if (underTarget) {
+                this.capacity = Math.min(1, this.capacity + INCREASE);
+            }
+
+            isOverloaded = this.isOverloaded();
+
+            if (isOverloaded && this.overload == null) {
+                this.overload = new CompletableFuture<>();
+            }
+        }
+
+        this.releaseBuilders();
+
+        if (isOverloaded != wasOverloaded) {
+            if (isOverloaded) {
+                this.dhSupport.info("Server is under heavy load" + (tickTime == null ? "" : " (" + String.format("%.1f", tickTime) + " MSPT)") + ". Pausing pre-generation and chunk generation until it recovers.");
+            } else {
+                this.dhSupport.info("Server load has recovered. Resuming pre-generation and chunk generation.");
+
+                this.resume();
+            }
+        }
+
+        if (this.dhSupport.isDebugEnabled()) {
+            this.dhSupport.debug("Load governor: " + (tickTime == null ? "?" : String.format("%.1f", tickTime)) + " MSPT, " + this.getActiveBuilders() + " running, " + queueDepth + " waiting, capacity " + String.format("%.2f", this.getCapacity()) + ".");
+        }
+    }
+
+    public synchronized boolean isOverloaded()
+    {
+        return this.enabled && this.capacity < OVERLOADED_CAPACITY;
+    }
+
+    public synchronized double getCapacity()
+    {
+        return this.enabled ? this.capacity : 1;
+    }
+
+    public boolean isChunkGenerationAllowed()
+    {
+        return !this.isOverloaded();
+    }
+
+    // Scale a concurrency limit by the current capacity.
+    public int scale(int limit)
+    {
+        return Math.max(1, (int) Math.round(limit * this.getCapacity()));
+    }
+
+    // Block the calling thread while the server is overloaded.
+    public void joinOverloadState()
+    {
+        @Nullable
+        CompletableFuture<?> overload;
+
+        synchronized (this) {
+            overload = this.overload;
+        }
+
+        if (overload != null) {
+            overload.join();
+        }
+    }
+
+    // Wake up anything waiting for the load to drop. Also used when shutting down.
+    public void resume()
+    {
+        @Nullable
+        CompletableFuture<?> overload;
+
+        synchronized (this) {
+            overload = this.overload;
+            this.overload = null;
+        }
+
+        if (overload != null) {
+            overload.complete(null);
+        }
+    }
+
+    // Completes when a builder may start. Must be followed by releaseBuilder() once the builder is done.
+    public synchronized CompletableFuture<Void> acquireBuilder()
+    {
+        // Slots are still counted while disabled, so that nothing goes out of balance if the governor is turned on meanwhile.
+        if (!this.enabled || this.activeBuilders < this.getBuilderLimit()) {
+            this.activeBuilders++;
+
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> waiting = new CompletableFuture<>();
+
+        this.waitingBuilders.add(waiting);
+
+        return waiting;
+    }
+
+    public void releaseBuilder()
+    {
+        synchronized (this) {
+            this.activeBuilders--;
+        }
+
+        this.releaseBuilders();
+    }
+
+    public synchronized int getBuilderLimit()
+    {
+        return this.scale(this.maxBuilders);
+    }
+
+    public synchronized int getActiveBuilders()
+    {
+        return this.activeBuilders;
+    }
+
+    public synchronized int getWaitingBuilders()
+    {
+        return this.waitingBuilders.size();
+    }
+
+    protected void releaseBuilders()
+    {
+        while (true) {
+            CompletableFuture<Void> next;
+
+            synchronized (this) {
+                if (this.waitingBuilders.isEmpty() || (this.enabled && this.activeBuilders >= this.getBuilderLimit())) {
+                    return;
+                }
+
+                next = this.waitingBuilders.poll();
+
+                this.activeBuilders++;
+            }
+
+            // Complete outside the lock, since this runs the builder's continuation.
+            next.complete(null);
+        }
+    }
+}
@@ -19,14 +19,18 @@
 package no.jckf.dhsupport.core;
 
 import no.jckf.dhsupport.core.configuration.DhsConfig;
-import no.jckf.dhsupport.core.database.models.LodModel;
+import no.jckf.dhsupport.core.database.models.PreGenJobModel;
 import no.jckf.dhsupport.core.dataobject.SectionPosition;
+import no.jckf.dhsupport.core.pregen.AdaptiveConcurrency;
+import no.jckf.dhsupport.core.pregen.ConcurrencyWindow;
+import no.jckf.dhsupport.core.pregen.PreGenCoordinator;
+import no.jckf.dhsupport.core.pregen.PreGenTraversal;
 import no.jckf.dhsupport.core.world.WorldInterface;
 
+import javax.annotation.Nullable;
 import java.time.Duration;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class PreGenerator implements Runnable
 {
@@ -42,19 +46,48 @@ public class PreGenerator implements Runnable
 
     protected boolean force;
 
+    // Only rebuild LODs whose chunks have been saved since the LOD was built.
+    protected boolean incremental = false;
+
+    protected PreGenTraversal traversal;
+
     protected int totalSteps;
 
-    protected int stepsSoFar = 0;
+    // Only written by the generator thread.
+    protected volatile int stepsSoFar = 0;
+
+    protected ConcurrencyWindow window = new ConcurrencyWindow(1);
+
+    @Nullable
+    protected AdaptiveConcurrency adaptiveConcurrency;
+
+    // Steps that have been handed out, but not completed yet.
+    protected ConcurrentSkipListSet<Integer> pendingSteps = new ConcurrentSkipListSet<>();
+
+    // Steps up to and including this one were completed in an earlier run.
+    protected int resumeStep = 0;
 
-    protected int inFlight = 0;
+    protected AtomicInteger generated = new AtomicInteger();
 
-    protected boolean run = true;
+    protected AtomicInteger skipped = new AtomicInteger();
+
+    protected volatile boolean run = true;
+
+    // Whether the job should be picked up again after a restart.
+    protected boolean resumable = true;
+
+    protected long previouslyElapsed = 0;
 
     protected long startTime = 0;
 
     protected long stopTime = 0;
 
     public PreGenerator(DhSupport dhSupport, WorldInterface world, int centerX, int centerZ, int radius, boolean force)
+    {
+        this(dhSupport, world, centerX, centerZ, radius, force, world.getConfig().getString(DhsConfig.PREGEN_TRAVERSAL, PreGenTraversal.SPIRAL));
+    }
+
+    public PreGenerator(DhSupport dhSupport, WorldInterface world, int centerX, int centerZ, int radius, boolean force, String traversal)
     {
         this.dhSupport = dhSupport;
         this.world = world;
@@ -63,75 +96,198 @@ public class PreGenerator implements Runnable
         this.radius = radius;
         this.force = force;
 
-        this.totalSteps = (int) Math.pow((double) Coordinates.blockToChunk(this.radius) / 2, 2);
+        this.traversal = PreGenTraversal.create(traversal, this.centerX, this.centerZ, this.radius);
+        this.totalSteps = this.traversal.size();
+    }
+
+    public PreGenerator(DhSupport dhSupport, WorldInterface world, PreGenJobModel job)
+    {
+        this(dhSupport, world, job.getCenterX(), job.getCenterZ(), job.getRadius(), job.getForce(), job.getTraversal());
+
+        this.incremental = job.getIncremental();
+        this.resumeStep = job.getStep();
+        this.stepsSoFar = job.getStep();
+        this.generated.set(job.getGenerated());
+        this.skipped.set(job.getSkipped());
+        this.previouslyElapsed = job.getElapsed();
     }
 
     public void run()
     {
         int rateLimit = this.world.getConfig().getInt(DhsConfig.FULL_DATA_REQUEST_CONCURRENCY_LIMIT);
+        int checkpointInterval = Math.max(1, this.world.getConfig().getInt(DhsConfig.PREGEN_CHECKPOINT_INTERVAL, 100));
+
+        if (this.world.getConfig().getBool(DhsConfig.PREGEN_ADAPTIVE_CONCURRENCY, true)) {
+            // Start at half the configured limit, and let the measurements decide where to go from there.
+            this.window.setLimit(Math.max(1, rateLimit / 2));
+
+            this.adaptiveConcurrency = new AdaptiveConcurrency(
+                this.window,
+                1,
+                rateLimit,
+                this.dhSupport.getTickMonitor(),
+                this.world.getConfig().getInt(DhsConfig.PREGEN_MIN_TPS, 18)
+            );
+        } else {
+            this.window.setLimit(rateLimit);
+        }
 
-        int currentX = this.centerX;
-        int currentZ = this.centerZ;
+        this.startTime = System.currentTimeMillis() - this.previouslyElapsed;
 
-        int[][] directions = {{ 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 }};
-        int dirIndex = 0;
+        this.checkpoint();
 
-        List<CompletableFuture<LodModel>> requests = new ArrayList<>();
+        // Fast-forward past steps completed in an earlier run.
+        this.traversal.skip(this.resumeStep);
 
-        this.startTime = System.currentTimeMillis();
+        LoadGovernor governor = this.dhSupport.getLoadGovernor();
 
-        OUTER: for (int step = 1; this.stepsSoFar < totalSteps; step++) {
-            for (int directionChanges = 0; directionChanges < 2; directionChanges++) {
-                for (int stepsOnThisSide = 0; stepsOnThisSide < step; stepsOnThisSide++) {
-                    if (!this.run) {
-                        break OUTER;
-                    }
+        PreGenCoordinator coordinator = this.dhSupport.getPreGenCoordinator();
 
-                    this.stepsSoFar++;
+        coordinator.register(this, this.world.getConfig().getInt(DhsConfig.PREGEN_WEIGHT, 1));
 
-                    if (this.stepsSoFar > this.totalSteps) {
-                        break OUTER;
-                    }
+        while (this.run && this.traversal.next()) {
+            // Back off while the server is struggling.
+            governor.joinOverloadState();
 
-                    currentX += directions[dirIndex][0];
-                    currentZ += directions[dirIndex][1];
+            // Our share of the global budget, which already accounts for server load.
+            int share = Math.min(rateLimit, coordinator.getShare(this));
 
-                    if (!this.force && this.dhSupport.lodRepository.lodExists(this.world.getId(), currentX, currentZ)) {
-                        continue;
-                    }
+            if (this.adaptiveConcurrency != null) {
+                this.adaptiveConcurrency.setMaxLimit(share);
+            } else {
+                this.window.setLimit(share);
+            }
 
-                    SectionPosition position = new SectionPosition();
-                    position.setX(currentX);
-                    position.setZ(currentZ);
-                    position.setDetailLevel(6);
+            if (!this.window.acquire()) {
+                break;
+            }
 
-                    CompletableFuture<LodModel> request = this.dhSupport.generateLod(this.world.getId(), position);
+            if (!coordinator.acquire(() -> this.run)) {
+                this.window.release();
+                break;
+            }
 
-                    request.handle((lodModel, exception) -> this.inFlight--);
+            int currentX = this.traversal.getX();
+            int currentZ = this.traversal.getZ();
 
-                    requests.add(request);
+            int thisStep = this.stepsSoFar + 1;
 
-                    this.inFlight++;
+            // Mark the step as pending before counting it, so that a checkpoint never sees it as done before it is.
+            this.pendingSteps.add(thisStep);
 
-                    while (this.inFlight >= rateLimit) {
-                        CompletableFuture.anyOf(requests.toArray(new CompletableFuture[0])).join();
+            this.stepsSoFar = thisStep;
 
-                        requests.removeIf(CompletableFuture::isDone);
-                    }
-                }
+            if (thisStep % checkpointInterval == 0) {
+                this.checkpoint();
+            }
 
-                dirIndex = (dirIndex + 1) % 4; // Change direction
+            if (!this.force && this.isUpToDate(currentX, currentZ)) {
+                this.skipped.incrementAndGet();
+                this.pendingSteps.remove(thisStep);
+                coordinator.release();
+                this.window.release();
+                continue;
             }
+
+            SectionPosition position = new SectionPosition();
+            position.setX(currentX);
+            position.setZ(currentZ);
+            position.setDetailLevel(6);
+
+            long requestTime = System.nanoTime();
+
+            this.dhSupport.generateLod(this.world.getId(), position).whenComplete((lodModel, exception) -> {
+                if (lodModel != null) {
+                    this.generated.incrementAndGet();
+                }
+
+                if (this.adaptiveConcurrency != null && exception == null) {
+                    this.adaptiveConcurrency.onCompleted(System.nanoTime() - requestTime);
+                }
+
+                this.pendingSteps.remove(thisStep);
+
+                coordinator.release();
+                this.window.release();
+            });
         }
 
+        // Let the last requests finish, so that the final checkpoint is accurate.
+        this.window.awaitEmpty();
+
+        coordinator.unregister(this);
+
         this.stopTime = System.currentTimeMillis();
 
+        boolean completed = this.run;
+
         this.run = false;
+
+        if (completed) {
+            if (this.dhSupport.getPreGenerator(this.world) == this) {
+                this.dhSupport.getPreGenJobRepository().deleteJob(this.world.getId());
+            }
+        } else {
+            this.checkpoint();
+        }
+    }
+
+    protected boolean isUpToDate(int sectionX, int sectionZ)
+    {
+        if (!this.incremental) {
+            return this.dhSupport.lodRepository.lodExists(this.world.getId(), sectionX, sectionZ);
+        }
+
+        @Nullable
+        Integer lodSourceTimestamp = this.dhSupport.lodRepository.loadSourceTimestamp(this.world.getId(), sectionX, sectionZ);
+
+        if (lodSourceTimestamp == null) {
+            return false;
+        }
+
+        return this.dhSupport.getSectionSourceTimestamp(this.world, sectionX, sectionZ) <= lodSourceTimestamp;
+    }
+
+    // Number of steps, counted from the start of the traversal, that are known to be completed.
+    public int getCompletedStep()
+    {
+        @Nullable
+        Integer firstPendingStep = this.pendingSteps.ceiling(Integer.MIN_VALUE);
+
+        if (firstPendingStep == null) {
+            return Math.min(this.stepsSoFar, this.totalSteps);
+        }
+
+        return firstPendingStep - 1;
+    }
+
+    public synchronized void checkpoint()
+    {
+        // A newer job has taken over this world. Don't overwrite it.
+        if (this.dhSupport.getPreGenerator(this.world) != this) {
+            return;
+        }
+
+        PreGenJobModel job = PreGenJobModel.create()
+            .setWorldId(this.world.getId())
+            .setCenterX(Coordinates.sectionToBlock(this.centerX))
+            .setCenterZ(Coordinates.sectionToBlock(this.centerZ))
+            .setRadius(this.radius)
+            .setForce(this.force)
+            .setTraversal(this.traversal.getType())
+            .setIncremental(this.incremental)
+            .setStep(this.getCompletedStep())
+            .setGenerated(this.generated.get())
+            .setSkipped(this.skipped.get())
+            .setElapsed(this.getElapsedTime().toMillis())
+            .setRunning(this.resumable);
+
+        this.dhSupport.getPreGenJobRepository().saveJob(job);
     }
 
     public int getCompletedRequests()
     {
-        return this.stepsSoFar - this.inFlight;
+        return this.stepsSoFar - this.window.getInFlight();
     }
 
     public int getTargetRequests()
@@ -144,22 +300,79 @@ public class PreGenerator implements Runnable
         return (float) this.getCompletedRequests() / this.getTargetRequests();
     }
 
+    public int getConcurrencyLimit()
+    {
+        return this.window.getLimit();
+    }
+
+    public int getGeneratedCount()
+    {
+        return this.generated.get();
+    }
+
+    public int getSkippedCount()
+    {
+        return this.skipped.get();
+    }
+
+    // Requests completed during this run. Used for speed calculations, since resumed jobs include earlier work.
+    public int getCompletedRequestsThisRun()
+    {
+        return this.getCompletedRequests() - this.resumeStep;
+    }
+
     public Duration getElapsedTime()
     {
         if (this.startTime == 0) {
-            return Duration.ZERO;
+            return Duration.ofMillis(this.previouslyElapsed);
         }
 
         return Duration.ofMillis((this.stopTime == 0 ? System.currentTimeMillis() : this.stopTime) - this.startTime);
     }
 
+    public Duration getElapsedTimeThisRun()
+    {
+        return this.getElapsedTime().minusMillis(this.previouslyElapsed);
+    }
+
+    public void setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+    }
+
+    public boolean isIncremental()
+    {
+        return this.incremental;
+    }
+
+    public String getTraversalType()
+    {
+        return this.traversal.getType();
+    }
+
     public boolean isRunning()
     {
         return this.run;
     }
 
+    // Stop, and don't resume after a restart.
     public void stop()
+    {
+        this.resumable = false;
+        this.run = false;
+        this.window.close();
+        this.dhSupport.getPreGenCoordinator().wakeUp();
+
+        this.checkpoint();
+    }
+
+    // Stop, but pick up where we left off after a restart.
+    public void suspend()
     {
         this.run = false;
+        this.window.close();
+        this.dhSupport.getPreGenCoordinator().wakeUp();
+
+        this.checkpoint();
     }
 }
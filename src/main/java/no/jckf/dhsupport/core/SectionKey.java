@@ -0,0 +1,56 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core;
+
+// Packs a world index and section X/Z into a single long: 12 bits of world, then 26 bits each of X and Z.
+public class SectionKey
+{
+    protected static final int WORLD_BITS = 12;
+
+    protected static final int COORDINATE_BITS = 26;
+
+    protected static final long WORLD_MASK = (1L << WORLD_BITS) - 1;
+
+    protected static final long COORDINATE_MASK = (1L << COORDINATE_BITS) - 1;
+
+    public static final int MAX_WORLDS = 1 << WORLD_BITS;
+
+    public static long pack(int worldIndex, int sectionX, int sectionZ)
+    {
+        return ((worldIndex & WORLD_MASK) << (COORDINATE_BITS * 2))
+            | ((sectionX & COORDINATE_MASK) << COORDINATE_BITS)
+            | (sectionZ & COORDINATE_MASK);
+    }
+
+    public static int getWorldIndex(long key)
+    {
+        return (int) ((key >>> (COORDINATE_BITS * 2)) & WORLD_MASK);
+    }
+
+    public static int getX(long key)
+    {
+        // Shift the sign bit of X all the way to the left, then back again to sign-extend it.
+        return (int) ((key << WORLD_BITS) >> (WORLD_BITS + COORDINATE_BITS));
+    }
+
+    public static int getZ(long key)
+    {
+        return (int) ((key << (WORLD_BITS + COORDINATE_BITS)) >> (WORLD_BITS + COORDINATE_BITS));
+    }
+}
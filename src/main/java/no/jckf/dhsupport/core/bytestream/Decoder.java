@@ -62,6 +62,30 @@ public class Decoder
         return this.input.readLong();
     }
 
+    public int readVarInt()
+    {
+        int value = 0;
+
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte part = this.input.readByte();
+
+            value |= (part & 0x7F) << shift;
+
+            if ((part & 0x80) == 0) {
+                break;
+            }
+        }
+
+        return value;
+    }
+
+    public byte[] readBytes(int length)
+    {
+        byte[] bytes = new byte[length];
+        this.input.readFully(bytes, 0, length);
+        return bytes;
+    }
+
     public String readShortString()
     {
         byte[] chars = new byte[this.input.readShort()];
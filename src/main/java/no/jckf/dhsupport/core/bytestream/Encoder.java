@@ -78,6 +78,17 @@ public class Encoder
         this.output.writeLong(value);
     }
 
+    // Seven bits at a time, least significant first. Small values take a single byte.
+    public void writeVarInt(int value)
+    {
+        while ((value & ~0x7F) != 0) {
+            this.output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+
+        this.output.writeByte(value);
+    }
+
     public void writeShortString(String value)
     {
         this.output.writeShort(value.length());
@@ -0,0 +1,325 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.collections;
+
+import javax.annotation.Nullable;
+import java.util.Objects;
+import java.util.function.LongFunction;
+
+// Concurrent map with primitive long keys. Entries are spread over a fixed number of stripes, each being a small
+// open-addressing table with its own lock. Null values are not allowed.
+public class LongConcurrentMap<V>
+{
+    protected static final int STRIPE_BITS = 4;
+
+    protected static final int STRIPE_COUNT = 1 << STRIPE_BITS;
+
+    protected final Stripe[] stripes = new Stripe[STRIPE_COUNT];
+
+    public LongConcurrentMap()
+    {
+        for (int i = 0; i < STRIPE_COUNT; i++) {
+            this.stripes[i] = new Stripe();
+        }
+    }
+
+    protected static long hash(long key)
+    {
+        // Murmur3 finalizer.
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        key ^= key >>> 33;
+
+        return key;
+    }
+
+    protected Stripe getStripe(long hash)
+    {
+        // Top bits pick the stripe, bottom bits pick the slot within it.
+        return this.stripes[(int) (hash >>> (64 - STRIPE_BITS))];
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V get(long key)
+    {
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            return (V) stripe.get(key, hash);
+        }
+    }
+
+    public boolean containsKey(long key)
+    {
+        return this.get(key) != null;
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value)
+    {
+        Objects.requireNonNull(value);
+
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            return (V) stripe.put(key, hash, value, false);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V putIfAbsent(long key, V value)
+    {
+        Objects.requireNonNull(value);
+
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            return (V) stripe.put(key, hash, value, true);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public V computeIfAbsent(long key, LongFunction<V> mappingFunction)
+    {
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            Object existing = stripe.get(key, hash);
+
+            if (existing != null) {
+                return (V) existing;
+            }
+
+            V value = Objects.requireNonNull(mappingFunction.apply(key));
+
+            stripe.put(key, hash, value, false);
+
+            return value;
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    public V remove(long key)
+    {
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            return (V) stripe.remove(key, hash, null);
+        }
+    }
+
+    public boolean remove(long key, V value)
+    {
+        long hash = hash(key);
+        Stripe stripe = this.getStripe(hash);
+
+        synchronized (stripe) {
+            return stripe.remove(key, hash, value) != null;
+        }
+    }
+
+    public int size()
+    {
+        int size = 0;
+
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return this.size() == 0;
+    }
+
+    public void clear()
+    {
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                stripe.clear();
+            }
+        }
+    }
+
+    // Snapshot of the keys present at the time of the call. Stripes are copied one at a time.
+    public long[] keys()
+    {
+        long[] keys = new long[16];
+        int count = 0;
+
+        for (Stripe stripe : this.stripes) {
+            synchronized (stripe) {
+                if (count + stripe.size > keys.length) {
+                    long[] grown = new long[Math.max(keys.length * 2, count + stripe.size)];
+                    System.arraycopy(keys, 0, grown, 0, count);
+                    keys = grown;
+                }
+
+                for (int slot = 0; slot < stripe.values.length; slot++) {
+                    if (stripe.values[slot] != null) {
+                        keys[count++] = stripe.keys[slot];
+                    }
+                }
+            }
+        }
+
+        long[] result = new long[count];
+        System.arraycopy(keys, 0, result, 0, count);
+
+        return result;
+    }
+
+    // Linear probing table. A null value marks an empty slot. Removal shifts entries back instead of leaving tombstones.
+    protected static class Stripe
+    {
+        protected static final int INITIAL_CAPACITY = 16;
+
+        protected long[] keys = new long[INITIAL_CAPACITY];
+
+        protected Object[] values = new Object[INITIAL_CAPACITY];
+
+        protected int size = 0;
+
+        @Nullable
+        protected Object get(long key, long hash)
+        {
+            int mask = this.keys.length - 1;
+
+            for (int slot = (int) hash & mask; this.values[slot] != null; slot = (slot + 1) & mask) {
+                if (this.keys[slot] == key) {
+                    return this.values[slot];
+                }
+            }
+
+            return null;
+        }
+
+        @Nullable
+        protected Object put(long key, long hash, Object value, boolean onlyIfAbsent)
+        {
+            int mask = this.keys.length - 1;
+            int slot = (int) hash & mask;
+
+            for (; this.values[slot] != null; slot = (slot + 1) & mask) {
+                if (this.keys[slot] == key) {
+                    Object previous = this.values[slot];
+
+                    if (!onlyIfAbsent) {
+                        this.values[slot] = value;
+                    }
+
+                    return previous;
+                }
+            }
+
+            this.keys[slot] = key;
+            this.values[slot] = value;
+            this.size++;
+
+            // Keep the load factor below 3/4 so that probes stay short and there is always an empty slot.
+            if (this.size * 4 >= this.keys.length * 3) {
+                this.resize(this.keys.length * 2);
+            }
+
+            return null;
+        }
+
+        @Nullable
+        protected Object remove(long key, long hash, @Nullable Object expectedValue)
+        {
+            int mask = this.keys.length - 1;
+            int slot = (int) hash & mask;
+
+            while (this.values[slot] != null && this.keys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+
+            Object previous = this.values[slot];
+
+            if (previous == null || (expectedValue != null && !expectedValue.equals(previous))) {
+                return null;
+            }
+
+            int gap = slot;
+            int next = slot;
+
+            while (true) {
+                next = (next + 1) & mask;
+
+                if (this.values[next] == null) {
+                    break;
+                }
+
+                int home = (int) hash(this.keys[next]) & mask;
+
+                // Move the entry into the gap unless its home slot lies cyclically within (gap, next].
+                boolean canMove = next > gap ? (home <= gap || home > next) : (home <= gap && home > next);
+
+                if (canMove) {
+                    this.keys[gap] = this.keys[next];
+                    this.values[gap] = this.values[next];
+                    gap = next;
+                }
+            }
+
+            this.values[gap] = null;
+            this.size--;
+
+            return previous;
+        }
+
+        protected void resize(int capacity)
+        {
+            long[] oldKeys = this.keys;
+            Object[] oldValues = this.values;
+
+            this.keys = new long[capacity];
+            this.values = new Object[capacity];
+            this.size = 0;
+
+            for (int slot = 0; slot < oldValues.length; slot++) {
+                if (oldValues[slot] != null) {
+                    this.put(oldKeys[slot], hash(oldKeys[slot]), oldValues[slot], false);
+                }
+            }
+        }
+
+        protected void clear()
+        {
+            this.keys = new long[INITIAL_CAPACITY];
+            this.values = new Object[INITIAL_CAPACITY];
+            this.size = 0;
+        }
+    }
+}
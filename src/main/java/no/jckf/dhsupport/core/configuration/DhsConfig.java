@@ -44,10 +44,14 @@ public abstract class DhsConfig
 
     public static String LOGIN_DATA_SYNC_RC_LIMIT = "login_data_sync_rc_limit";
 
+    public static String LOGIN_DATA_SYNC_MANIFESTS_ENABLED = "login_data_sync_manifests_enabled";
+
     public static String MAX_DATA_TRANSFER_SPEED = "max_data_transfer_speed";
 
     public static String SCHEDULER_THREADS = "scheduler_threads";
 
+    public static String USE_VIRTUAL_THREADS = "use_virtual_threads";
+
     public static String LEVEL_KEY_PREFIX = "level_key_prefix";
 
     public static String BORDER_CENTER_X = "border_center_x";
@@ -62,6 +66,12 @@ public abstract class DhsConfig
 
     public static String LOD_REFRESH_INTERVAL = "lod_refresh_interval";
 
+    public static String LOD_PATCH_MAX_COLUMNS = "lod_patch_max_columns";
+
+    public static String LOD_REFRESH_COOLDOWN = "lod_refresh_cooldown";
+
+    public static String LOD_REFRESH_BUDGET = "lod_refresh_budget";
+
     public static String GENERATE_NEW_CHUNKS = "generate_new_chunks";
 
     public static String GENERATE_NEW_CHUNKS_WARNING = "generate_new_chunks_warning";
@@ -70,6 +80,8 @@ public abstract class DhsConfig
 
     public static String BUILDER_RESOLUTION = "builder_resolution";
 
+    public static String BUILDER_SPLIT_QUEUE_DEPTH = "builder_split_queue_depth";
+
     public static String SCAN_TO_SEA_LEVEL= "scan_to_sea_level";
 
     public static String FAST_UNDERFILL = "fast_underfill";
@@ -81,4 +93,28 @@ public abstract class DhsConfig
     public static String SAMPLE_BIOMES_3D = "sample_biomes_3d";
 
     public static String UPDATE_EVENTS = "update_events";
+
+    public static String CHANGE_DETECTION = "change_detection";
+
+    public static String MAX_DETAIL_LEVEL = "max_detail_level";
+
+    public static String PREGEN_CHECKPOINT_INTERVAL = "pregen_checkpoint_interval";
+
+    public static String PREGEN_TRAVERSAL = "pregen_traversal";
+
+    public static String PREGEN_ADAPTIVE_CONCURRENCY = "pregen_adaptive_concurrency";
+
+    public static String PREGEN_MIN_TPS = "pregen_min_tps";
+
+    public static String PREGEN_GLOBAL_CONCURRENCY_LIMIT = "pregen_global_concurrency_limit";
+
+    public static String PREGEN_WEIGHT = "pregen_weight";
+
+    public static String AUTO_THROTTLE = "auto_throttle";
+
+    public static String AUTO_THROTTLE_TARGET_MSPT = "auto_throttle_target_mspt";
+
+    public static String AUTO_THROTTLE_MAX_QUEUE_DEPTH = "auto_throttle_max_queue_depth";
+
+    public static String AUTO_THROTTLE_INTERVAL = "auto_throttle_interval";
 }
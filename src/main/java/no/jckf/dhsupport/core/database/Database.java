@@ -21,7 +21,7 @@ package no.jckf.dhsupport.core.database;
 import no.jckf.dhsupport.core.database.migrations.Migration;
 
 import java.sql.*;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -34,7 +34,8 @@ public class Database
 
     protected Map<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
 
-    protected Map<String, Class<? extends Migration>> migrations = new HashMap<>();
+    // Migrations run in the order they were added.
+    protected Map<String, Class<? extends Migration>> migrations = new LinkedHashMap<>();
 
     protected CompletableFuture<?> optimizing;
 
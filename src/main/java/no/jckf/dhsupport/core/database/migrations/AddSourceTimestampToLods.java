@@ -0,0 +1,39 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.database.migrations;
+
+import no.jckf.dhsupport.core.database.Database;
+
+import java.sql.Statement;
+
+public class AddSourceTimestampToLods extends Migration
+{
+    public AddSourceTimestampToLods(Database database)
+    {
+        super(database);
+    }
+
+    @Override
+    public void up() throws Exception
+    {
+        try (Statement statement = this.database.getConnection().createStatement()) {
+            statement.execute("ALTER TABLE lods ADD COLUMN sourceTimestamp INTEGER NOT NULL DEFAULT 0");
+        }
+    }
+}
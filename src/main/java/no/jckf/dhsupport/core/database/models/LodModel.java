@@ -33,12 +33,17 @@ public class LodModel extends Model
 
     protected int z;
 
+    protected int detailLevel = 6;
+
     protected byte[] data;
 
     protected byte[] beacons;
 
     protected int timestamp;
 
+    // Latest save time of the chunks this LOD was built from. 0 if unknown.
+    protected int sourceTimestamp;
+
     public LodModel setWorldId(UUID worldId)
     {
         this.worldId = worldId;
@@ -75,6 +80,18 @@ public class LodModel extends Model
         return z;
     }
 
+    public LodModel setDetailLevel(int detailLevel)
+    {
+        this.detailLevel = detailLevel;
+
+        return this;
+    }
+
+    public int getDetailLevel()
+    {
+        return this.detailLevel;
+    }
+
     public LodModel setData(byte[] data)
     {
         this.data = data;
@@ -111,6 +128,18 @@ public class LodModel extends Model
         return this.timestamp;
     }
 
+    public LodModel setSourceTimestamp(int sourceTimestamp)
+    {
+        this.sourceTimestamp = sourceTimestamp;
+
+        return this;
+    }
+
+    public int getSourceTimestamp()
+    {
+        return this.sourceTimestamp;
+    }
+
     public String toString()
     {
         return this.getWorldId() + "@" + this.getX() + "x" + this.getZ();
@@ -0,0 +1,220 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.database.models;
+
+import java.util.UUID;
+
+public class PreGenJobModel extends Model
+{
+    public static PreGenJobModel create()
+    {
+        return new PreGenJobModel();
+    }
+
+    protected UUID worldId;
+
+    // Center is stored in block coordinates.
+    protected int centerX;
+
+    protected int centerZ;
+
+    protected int radius;
+
+    protected boolean force;
+
+    protected String traversal;
+
+    // Rebuild existing LODs whose chunks have been saved since the LOD was built.
+    protected boolean incremental;
+
+    // Number of steps along the traversal that are known to be completed.
+    protected int step;
+
+    protected int generated;
+
+    protected int skipped;
+
+    // Milliseconds spent running so far.
+    protected long elapsed;
+
+    protected boolean running;
+
+    protected int timestamp;
+
+    public PreGenJobModel setWorldId(UUID worldId)
+    {
+        this.worldId = worldId;
+
+        return this;
+    }
+
+    public UUID getWorldId()
+    {
+        return this.worldId;
+    }
+
+    public PreGenJobModel setCenterX(int centerX)
+    {
+        this.centerX = centerX;
+
+        return this;
+    }
+
+    public int getCenterX()
+    {
+        return this.centerX;
+    }
+
+    public PreGenJobModel setCenterZ(int centerZ)
+    {
+        this.centerZ = centerZ;
+
+        return this;
+    }
+
+    public int getCenterZ()
+    {
+        return this.centerZ;
+    }
+
+    public PreGenJobModel setRadius(int radius)
+    {
+        this.radius = radius;
+
+        return this;
+    }
+
+    public int getRadius()
+    {
+        return this.radius;
+    }
+
+    public PreGenJobModel setForce(boolean force)
+    {
+        this.force = force;
+
+        return this;
+    }
+
+    public boolean getForce()
+    {
+        return this.force;
+    }
+
+    public PreGenJobModel setTraversal(String traversal)
+    {
+        this.traversal = traversal;
+
+        return this;
+    }
+
+    public String getTraversal()
+    {
+        return this.traversal;
+    }
+
+    public PreGenJobModel setIncremental(boolean incremental)
+    {
+        this.incremental = incremental;
+
+        return this;
+    }
+
+    public boolean getIncremental()
+    {
+        return this.incremental;
+    }
+
+    public PreGenJobModel setStep(int step)
+    {
+        this.step = step;
+
+        return this;
+    }
+
+    public int getStep()
+    {
+        return this.step;
+    }
+
+    public PreGenJobModel setGenerated(int generated)
+    {
+        this.generated = generated;
+
+        return this;
+    }
+
+    public int getGenerated()
+    {
+        return this.generated;
+    }
+
+    public PreGenJobModel setSkipped(int skipped)
+    {
+        this.skipped = skipped;
+
+        return this;
+    }
+
+    public int getSkipped()
+    {
+        return this.skipped;
+    }
+
+    public PreGenJobModel setElapsed(long elapsed)
+    {
+        this.elapsed = elapsed;
+
+        return this;
+    }
+
+    public long getElapsed()
+    {
+        return this.elapsed;
+    }
+
+    public PreGenJobModel setRunning(boolean running)
+    {
+        this.running = running;
+
+        return this;
+    }
+
+    public boolean getRunning()
+    {
+        return this.running;
+    }
+
+    public PreGenJobModel setTimestamp(int timestamp)
+    {
+        this.timestamp = timestamp;
+
+        return this;
+    }
+
+    public int getTimestamp()
+    {
+        return this.timestamp;
+    }
+
+    public String toString()
+    {
+        return this.getWorldId() + "@" + this.getCenterX() + "x" + this.getCenterZ() + "r" + this.getRadius();
+    }
+}
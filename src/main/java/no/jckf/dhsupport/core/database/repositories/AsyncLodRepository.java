@@ -51,9 +51,9 @@ public class AsyncLodRepository extends LodRepository
         return future;
     }
 
-    public CompletableFuture<LodModel> saveLodAsync(UUID worldId, int sectionX, int sectionZ, byte[] data, byte[] beacons)
+    public CompletableFuture<LodModel> saveLodAsync(UUID worldId, int sectionX, int sectionZ, byte[] data, byte[] beacons, int sourceTimestamp)
     {
-        return this.queueTask(() -> this.saveLod(worldId, sectionX, sectionZ, data, beacons));
+        return this.queueTask(() -> this.saveLod(worldId, sectionX, sectionZ, data, beacons, sourceTimestamp));
     }
 
     public CompletableFuture<LodModel> loadLodAsync(UUID worldId, int sectionX, int sectionZ)
@@ -61,6 +61,51 @@ public class AsyncLodRepository extends LodRepository
         return this.queueTask(() -> this.loadLod(worldId, sectionX, sectionZ));
     }
 
+    public CompletableFuture<Integer> loadLodTimestampAsync(UUID worldId, int sectionX, int sectionZ)
+    {
+        return this.queueTask(() -> this.loadLodTimestamp(worldId, sectionX, sectionZ));
+    }
+
+    public CompletableFuture<Integer> loadMipLodTimestampAsync(UUID worldId, int detailLevel, int sectionX, int sectionZ)
+    {
+        return this.queueTask(() -> this.loadMipLodTimestamp(worldId, detailLevel, sectionX, sectionZ));
+    }
+
+    public CompletableFuture<Integer> loadSourceTimestampAsync(UUID worldId, int sectionX, int sectionZ)
+    {
+        return this.queueTask(() -> this.loadSourceTimestamp(worldId, sectionX, sectionZ));
+    }
+
+    public CompletableFuture<int[]> loadRegionTimestampsAsync(UUID worldId, int regionX, int regionZ)
+    {
+        return this.queueTask(() -> this.loadRegionTimestamps(worldId, regionX, regionZ));
+    }
+
+    public CompletableFuture<LodModel> saveMipLodAsync(UUID worldId, int detailLevel, int sectionX, int sectionZ, byte[] data, byte[] beacons)
+    {
+        return this.queueTask(() -> this.saveMipLod(worldId, detailLevel, sectionX, sectionZ, data, beacons));
+    }
+
+    public CompletableFuture<LodModel> loadMipLodAsync(UUID worldId, int detailLevel, int sectionX, int sectionZ)
+    {
+        return this.queueTask(() -> this.loadMipLod(worldId, detailLevel, sectionX, sectionZ));
+    }
+
+    public CompletableFuture<Integer> deleteMipLodsAsync(UUID worldId, int sectionX, int sectionZ, int maxDetailLevel)
+    {
+        return this.queueTask(() -> this.deleteMipLods(worldId, sectionX, sectionZ, maxDetailLevel));
+    }
+
+    public CompletableFuture<Boolean> saveChunkHashAsync(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        return this.queueTask(() -> this.saveChunkHash(worldId, chunkX, chunkZ, hash));
+    }
+
+    public CompletableFuture<Integer> swapChunkHashAsync(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        return this.queueTask(() -> this.swapChunkHash(worldId, chunkX, chunkZ, hash));
+    }
+
     public CompletableFuture<Boolean> lodExistsAsync(UUID worldId, int sectionX, int sectionZ)
     {
         return this.queueTask(() -> this.lodExists(worldId, sectionX, sectionZ));
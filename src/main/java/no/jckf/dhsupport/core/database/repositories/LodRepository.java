@@ -18,27 +18,57 @@
 
 package no.jckf.dhsupport.core.database.repositories;
 
+import no.jckf.dhsupport.core.Coordinates;
 import no.jckf.dhsupport.core.database.Database;
 import no.jckf.dhsupport.core.database.models.LodModel;
 
+import javax.annotation.Nullable;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.UUID;
 import java.util.logging.Logger;
 
 public class LodRepository
 {
-    protected static final String SQL_SAVE_LOD = "REPLACE INTO lods (worldId, x, z, data, beacons, timestamp) VALUES (?, ?, ?, ?, ?, ?)";
+    protected static final String SQL_SAVE_LOD = "REPLACE INTO lods (worldId, x, z, data, beacons, timestamp, sourceTimestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
 
-    protected static final String SQL_LOAD_LOD = "SELECT data, beacons, timestamp FROM lods WHERE worldId = ? AND x = ? AND z = ? LIMIT 1";
+    protected static final String SQL_LOAD_LOD = "SELECT data, beacons, timestamp, sourceTimestamp FROM lods WHERE worldId = ? AND x = ? AND z = ? LIMIT 1";
+
+    protected static final String SQL_LOAD_LOD_TIMESTAMP = "SELECT timestamp FROM lods WHERE worldId = ? AND x = ? AND z = ? LIMIT 1";
+
+    protected static final String SQL_LOAD_MIP_LOD_TIMESTAMP = "SELECT timestamp FROM lod_mips WHERE worldId = ? AND detailLevel = ? AND x = ? AND z = ? LIMIT 1";
+
+    protected static final String SQL_LOAD_SOURCE_TIMESTAMP = "SELECT timestamp, sourceTimestamp FROM lods WHERE worldId = ? AND x = ? AND z = ? LIMIT 1";
+
+    protected static final String SQL_LOAD_REGION_TIMESTAMPS = "SELECT x, z, timestamp FROM lods WHERE worldId = ? AND x >= ? AND x <= ? AND z >= ? AND z <= ?";
+
+    protected static final String SQL_SAVE_MIP_LOD = "REPLACE INTO lod_mips (worldId, detailLevel, x, z, data, beacons, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?)";
+
+    protected static final String SQL_LOAD_MIP_LOD = "SELECT data, beacons, timestamp FROM lod_mips WHERE worldId = ? AND detailLevel = ? AND x = ? AND z = ? LIMIT 1";
+
+    protected static final String SQL_DELETE_MIP_LOD = "DELETE FROM lod_mips WHERE worldId = ? AND detailLevel = ? AND x = ? AND z = ?";
 
     protected static final String SQL_LOD_EXISTS = "SELECT EXISTS( SELECT 1 FROM lods WHERE worldId = ? AND x = ? AND z = ? )";
 
     protected static final String SQL_DELETE_LOD = "DELETE FROM lods WHERE worldId = ? AND x = ? AND z = ?";
 
+    protected static final String SQL_SAVE_CHUNK_HASH = "REPLACE INTO chunk_hashes (worldId, x, z, hash) VALUES (?, ?, ?, ?)";
+
+    protected static final String SQL_UPDATE_CHUNK_HASH = "UPDATE chunk_hashes SET hash = ? WHERE worldId = ? AND x = ? AND z = ?";
+
+    protected static final String SQL_LOAD_CHUNK_HASH = "SELECT hash FROM chunk_hashes WHERE worldId = ? AND x = ? AND z = ? LIMIT 1";
+
     protected static final String SQL_TRIM_LODS = "DELETE FROM lods WHERE worldId = ? AND (x < ? OR z < ? OR x > ? OR z > ?)";
 
+    protected static final String SQL_TRIM_CHUNK_HASHES = "DELETE FROM chunk_hashes WHERE worldId = ? AND (x < ? OR z < ? OR x > ? OR z > ?)";
+
+    protected static final String SQL_LOAD_MIP_LOD_DETAIL_LEVELS = "SELECT DISTINCT detailLevel FROM lod_mips WHERE worldId = ?";
+
+    protected static final String SQL_TRIM_MIP_LODS = "DELETE FROM lod_mips WHERE worldId = ? AND detailLevel = ? AND (x < ? OR z < ? OR x > ? OR z > ?)";
+
     protected Database database;
 
     protected Logger logger;
@@ -58,7 +88,7 @@ public class LodRepository
         return this.logger;
     }
 
-    public LodModel saveLod(UUID worldId, int sectionX, int sectionZ, byte[] data, byte[] beacons)
+    public LodModel saveLod(UUID worldId, int sectionX, int sectionZ, byte[] data, byte[] beacons, int sourceTimestamp)
     {
         int timestamp = (int) (System.currentTimeMillis() / 1000);
 
@@ -71,6 +101,7 @@ public class LodRepository
             statement.setBytes(4, data);
             statement.setBytes(5, beacons);
             statement.setInt(6, timestamp);
+            statement.setInt(7, sourceTimestamp);
 
             statement.executeUpdate();
 
@@ -80,7 +111,8 @@ public class LodRepository
                 .setZ(sectionZ)
                 .setData(data)
                 .setBeacons(beacons)
-                .setTimestamp(timestamp);
+                .setTimestamp(timestamp)
+                .setSourceTimestamp(sourceTimestamp);
         } catch (SQLException exception) {
             this.getLogger().warning("Could not save LOD: " + exception);
 
@@ -112,6 +144,199 @@ public class LodRepository
                     .setZ(sectionZ)
                     .setData(data)
                     .setBeacons(result.getBytes("beacons"))
+                    .setTimestamp(result.getInt("timestamp"))
+                    .setSourceTimestamp(result.getInt("sourceTimestamp"));
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load LOD: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    // When a stored LOD was built, or null if there is no LOD. Doesn't read the LOD data itself.
+    public @Nullable Integer loadLodTimestamp(UUID worldId, int sectionX, int sectionZ)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_LOD_TIMESTAMP);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, sectionX);
+            statement.setInt(3, sectionZ);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                return result.getInt("timestamp");
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load LOD timestamp: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    public @Nullable Integer loadMipLodTimestamp(UUID worldId, int detailLevel, int sectionX, int sectionZ)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_MIP_LOD_TIMESTAMP);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, detailLevel);
+            statement.setInt(3, sectionX);
+            statement.setInt(4, sectionZ);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                return result.getInt("timestamp");
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load merged LOD timestamp: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    // Source timestamp of a stored LOD, or null if there is no LOD.
+    public @Nullable Integer loadSourceTimestamp(UUID worldId, int sectionX, int sectionZ)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_SOURCE_TIMESTAMP);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, sectionX);
+            statement.setInt(3, sectionZ);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                int sourceTimestamp = result.getInt("sourceTimestamp");
+
+                // LODs from before source timestamps were recorded. Their chunks can't have changed since they were built.
+                if (sourceTimestamp == 0) {
+                    return result.getInt("timestamp");
+                }
+
+                return sourceTimestamp;
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load LOD source timestamp: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    // Timestamps of all LODs in a region, ordered by X and then Z. Zero means there is no LOD.
+    @Nullable
+    public int[] loadRegionTimestamps(UUID worldId, int regionX, int regionZ)
+    {
+        int regionWidth = Coordinates.regionToSection(1);
+
+        int lowSectionX = Coordinates.regionToSection(regionX);
+        int lowSectionZ = Coordinates.regionToSection(regionZ);
+
+        int[] timestamps = new int[regionWidth * regionWidth];
+
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_REGION_TIMESTAMPS);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, lowSectionX);
+            statement.setInt(3, lowSectionX + regionWidth - 1);
+            statement.setInt(4, lowSectionZ);
+            statement.setInt(5, lowSectionZ + regionWidth - 1);
+
+            try (ResultSet result = statement.executeQuery()) {
+                while (result.next()) {
+                    int relativeX = result.getInt("x") - lowSectionX;
+                    int relativeZ = result.getInt("z") - lowSectionZ;
+
+                    timestamps[relativeX * regionWidth + relativeZ] = result.getInt("timestamp");
+                }
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load LOD timestamps: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+
+        return timestamps;
+    }
+
+    // LODs above detail level 6 are merged from the level below, and stored separately.
+    public LodModel saveMipLod(UUID worldId, int detailLevel, int sectionX, int sectionZ, byte[] data, byte[] beacons)
+    {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_SAVE_MIP_LOD);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, detailLevel);
+            statement.setInt(3, sectionX);
+            statement.setInt(4, sectionZ);
+            statement.setBytes(5, data);
+            statement.setBytes(6, beacons);
+            statement.setInt(7, timestamp);
+
+            statement.executeUpdate();
+
+            return LodModel.create()
+                .setWorldId(worldId)
+                .setDetailLevel(detailLevel)
+                .setX(sectionX)
+                .setZ(sectionZ)
+                .setData(data)
+                .setBeacons(beacons)
+                .setTimestamp(timestamp);
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not save LOD: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    public LodModel loadMipLod(UUID worldId, int detailLevel, int sectionX, int sectionZ)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_MIP_LOD);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, detailLevel);
+            statement.setInt(3, sectionX);
+            statement.setInt(4, sectionZ);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                return LodModel.create()
+                    .setWorldId(worldId)
+                    .setDetailLevel(detailLevel)
+                    .setX(sectionX)
+                    .setZ(sectionZ)
+                    .setData(result.getBytes("data"))
+                    .setBeacons(result.getBytes("beacons"))
                     .setTimestamp(result.getInt("timestamp"));
             }
         } catch (SQLException exception) {
@@ -123,6 +348,31 @@ public class LodRepository
         }
     }
 
+    // Delete every merged LOD that covers the given detail level 6 section, so that they will be merged again.
+    public int deleteMipLods(UUID worldId, int sectionX, int sectionZ, int maxDetailLevel)
+    {
+        int affectedRows = 0;
+
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_DELETE_MIP_LOD);
+
+            for (int detailLevel = 7; detailLevel <= maxDetailLevel; detailLevel++) {
+                statement.setString(1, worldId.toString());
+                statement.setInt(2, detailLevel);
+                statement.setInt(3, sectionX >> (detailLevel - 6));
+                statement.setInt(4, sectionZ >> (detailLevel - 6));
+
+                affectedRows += statement.executeUpdate();
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not delete LOD: " + exception);
+
+            this.database.clearQueryCache();
+        }
+
+        return affectedRows;
+    }
+
     public boolean lodExists(UUID worldId, int sectionX, int sectionZ)
     {
         try {
@@ -165,6 +415,86 @@ public class LodRepository
         }
     }
 
+    public boolean saveChunkHash(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_SAVE_CHUNK_HASH);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, chunkX);
+            statement.setInt(3, chunkZ);
+            statement.setInt(4, hash);
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not save chunk hash: " + exception);
+
+            this.database.clearQueryCache();
+
+            return false;
+        }
+    }
+
+    public boolean updateChunkHash(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_UPDATE_CHUNK_HASH);
+
+            statement.setInt(1, hash);
+            statement.setString(2, worldId.toString());
+            statement.setInt(3, chunkX);
+            statement.setInt(4, chunkZ);
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not update chunk hash: " + exception);
+
+            this.database.clearQueryCache();
+
+            return false;
+        }
+    }
+
+    @Nullable
+    public Integer loadChunkHash(UUID worldId, int chunkX, int chunkZ)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_CHUNK_HASH);
+
+            statement.setString(1, worldId.toString());
+            statement.setInt(2, chunkX);
+            statement.setInt(3, chunkZ);
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                return result.getInt("hash");
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load chunk hash: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    // Replace the stored hash for a chunk, and return the one it replaced. Chunks without a stored hash have no LOD to
+    // compare against, so nothing is stored for them and null is returned.
+    @Nullable
+    public Integer swapChunkHash(UUID worldId, int chunkX, int chunkZ, int hash)
+    {
+        Integer previous = this.loadChunkHash(worldId, chunkX, chunkZ);
+
+        if (previous != null && previous != hash) {
+            this.updateChunkHash(worldId, chunkX, chunkZ, hash);
+        }
+
+        return previous;
+    }
+
     public int trimLods(UUID worldId, int lowSectionX, int lowSectionZ, int highSectionX, int highSectionZ)
     {
         int affectedRows = 0;
@@ -180,6 +510,45 @@ public class LodRepository
 
             affectedRows = statement.executeUpdate();
 
+            PreparedStatement hashStatement = this.database.prepareAndReuse(SQL_TRIM_CHUNK_HASHES);
+
+            hashStatement.setString(1, worldId.toString());
+            hashStatement.setInt(2, Coordinates.sectionToChunk(lowSectionX));
+            hashStatement.setInt(3, Coordinates.sectionToChunk(lowSectionZ));
+            hashStatement.setInt(4, Coordinates.sectionToChunk(highSectionX + 1) - 1);
+            hashStatement.setInt(5, Coordinates.sectionToChunk(highSectionZ + 1) - 1);
+
+            hashStatement.executeUpdate();
+
+            List<Integer> detailLevels = new ArrayList<>();
+
+            PreparedStatement detailLevelStatement = this.database.prepareAndReuse(SQL_LOAD_MIP_LOD_DETAIL_LEVELS);
+
+            detailLevelStatement.setString(1, worldId.toString());
+
+            try (ResultSet result = detailLevelStatement.executeQuery()) {
+                while (result.next()) {
+                    detailLevels.add(result.getInt("detailLevel"));
+                }
+            }
+
+            // Merged LODs are only kept when they lie entirely within the area. Ones that reach outside it would still
+            // contain the trimmed LODs, so they are dropped and merged again on request.
+            for (int detailLevel : detailLevels) {
+                int shift = detailLevel - 6;
+
+                PreparedStatement mipStatement = this.database.prepareAndReuse(SQL_TRIM_MIP_LODS);
+
+                mipStatement.setString(1, worldId.toString());
+                mipStatement.setInt(2, detailLevel);
+                mipStatement.setInt(3, -(-lowSectionX >> shift));
+                mipStatement.setInt(4, -(-lowSectionZ >> shift));
+                mipStatement.setInt(5, ((highSectionX + 1) >> shift) - 1);
+                mipStatement.setInt(6, ((highSectionZ + 1) >> shift) - 1);
+
+                mipStatement.executeUpdate();
+            }
+
             this.database.optimize();
         } catch (Exception exception) {
             this.getLogger().warning("Could not trim LODs/optimize DB: " + exception);
@@ -0,0 +1,145 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.database.repositories;
+
+import no.jckf.dhsupport.core.database.Database;
+import no.jckf.dhsupport.core.database.models.PreGenJobModel;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.logging.Logger;
+
+public class PreGenJobRepository
+{
+    protected static final String SQL_SAVE_JOB = "REPLACE INTO pregen_jobs (worldId, centerX, centerZ, radius, force, traversal, incremental, step, generated, skipped, elapsed, running, timestamp) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    protected static final String SQL_LOAD_JOB = "SELECT centerX, centerZ, radius, force, traversal, incremental, step, generated, skipped, elapsed, running, timestamp FROM pregen_jobs WHERE worldId = ? LIMIT 1";
+
+    protected static final String SQL_DELETE_JOB = "DELETE FROM pregen_jobs WHERE worldId = ?";
+
+    protected Database database;
+
+    protected Logger logger;
+
+    public PreGenJobRepository(Database database)
+    {
+        this.database = database;
+    }
+
+    public void setLogger(Logger logger)
+    {
+        this.logger = logger;
+    }
+
+    public Logger getLogger()
+    {
+        return this.logger;
+    }
+
+    // Jobs for different worlds are checkpointed from different threads, so don't let them share statements at the same time.
+    public synchronized boolean saveJob(PreGenJobModel job)
+    {
+        int timestamp = (int) (System.currentTimeMillis() / 1000);
+
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_SAVE_JOB);
+
+            statement.setString(1, job.getWorldId().toString());
+            statement.setInt(2, job.getCenterX());
+            statement.setInt(3, job.getCenterZ());
+            statement.setInt(4, job.getRadius());
+            statement.setBoolean(5, job.getForce());
+            statement.setString(6, job.getTraversal());
+            statement.setBoolean(7, job.getIncremental());
+            statement.setInt(8, job.getStep());
+            statement.setInt(9, job.getGenerated());
+            statement.setInt(10, job.getSkipped());
+            statement.setLong(11, job.getElapsed());
+            statement.setBoolean(12, job.getRunning());
+            statement.setInt(13, timestamp);
+
+            statement.executeUpdate();
+
+            job.setTimestamp(timestamp);
+
+            return true;
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not save pre-generation job: " + exception);
+
+            this.database.clearQueryCache();
+
+            return false;
+        }
+    }
+
+    public synchronized PreGenJobModel loadJob(UUID worldId)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_LOAD_JOB);
+
+            statement.setString(1, worldId.toString());
+
+            try (ResultSet result = statement.executeQuery()) {
+                if (!result.next()) {
+                    return null;
+                }
+
+                return PreGenJobModel.create()
+                    .setWorldId(worldId)
+                    .setCenterX(result.getInt("centerX"))
+                    .setCenterZ(result.getInt("centerZ"))
+                    .setRadius(result.getInt("radius"))
+                    .setForce(result.getBoolean("force"))
+                    .setTraversal(result.getString("traversal"))
+                    .setIncremental(result.getBoolean("incremental"))
+                    .setStep(result.getInt("step"))
+                    .setGenerated(result.getInt("generated"))
+                    .setSkipped(result.getInt("skipped"))
+                    .setElapsed(result.getLong("elapsed"))
+                    .setRunning(result.getBoolean("running"))
+                    .setTimestamp(result.getInt("timestamp"));
+            }
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not load pre-generation job: " + exception);
+
+            this.database.clearQueryCache();
+
+            return null;
+        }
+    }
+
+    public synchronized boolean deleteJob(UUID worldId)
+    {
+        try {
+            PreparedStatement statement = this.database.prepareAndReuse(SQL_DELETE_JOB);
+
+            statement.setString(1, worldId.toString());
+
+            return statement.executeUpdate() > 0;
+        } catch (SQLException exception) {
+            this.getLogger().warning("Could not delete pre-generation job: " + exception);
+
+            this.database.clearQueryCache();
+
+            return false;
+        }
+    }
+}
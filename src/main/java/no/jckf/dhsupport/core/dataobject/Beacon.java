@@ -18,6 +18,7 @@
 
 package no.jckf.dhsupport.core.dataobject;
 
+import no.jckf.dhsupport.core.bytestream.Decoder;
 import no.jckf.dhsupport.core.bytestream.Encoder;
 
 public class Beacon extends DataObject
@@ -49,4 +50,18 @@ public class Beacon extends DataObject
 
         encoder.writeInt(this.color);
     }
+
+    @Override
+    public void decode(Decoder decoder)
+    {
+        this.position = new BlockPosition();
+        this.position.decode(decoder);
+
+        this.color = decoder.readInt();
+    }
+
+    public BlockPosition getPosition()
+    {
+        return this.position;
+    }
 }
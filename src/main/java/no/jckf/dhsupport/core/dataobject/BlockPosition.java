@@ -18,6 +18,7 @@
 
 package no.jckf.dhsupport.core.dataobject;
 
+import no.jckf.dhsupport.core.bytestream.Decoder;
 import no.jckf.dhsupport.core.bytestream.Encoder;
 
 public class BlockPosition extends DataObject
@@ -77,4 +78,12 @@ public class BlockPosition extends DataObject
         encoder.writeInt(this.y);
         encoder.writeInt(this.z);
     }
+
+    @Override
+    public void decode(Decoder decoder)
+    {
+        this.x = decoder.readInt();
+        this.y = decoder.readInt();
+        this.z = decoder.readInt();
+    }
 }
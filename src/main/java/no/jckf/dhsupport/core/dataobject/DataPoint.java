@@ -45,6 +45,22 @@ public class DataPoint extends DataObject
 
     protected long data = 0;
 
+    public void setData(long data)
+    {
+        this.data = data;
+    }
+
+    public long getData()
+    {
+        return this.data;
+    }
+
+    // Highest Y covered by this data point.
+    public int getTopY()
+    {
+        return this.getStartY() + this.getHeight();
+    }
+
     public void setMappingId(int mappingId)
     {
         this.data &= ~(MAPPING_ID_MASK << MAPPING_ID_OFFSET);
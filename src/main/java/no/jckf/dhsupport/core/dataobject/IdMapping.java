@@ -21,6 +21,7 @@ package no.jckf.dhsupport.core.dataobject;
 import no.jckf.dhsupport.core.bytestream.Encoder;
 
 import javax.annotation.Nullable;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public class IdMapping extends DataObject
@@ -36,6 +37,35 @@ public class IdMapping extends DataObject
     @Nullable
     protected Map<String, String> properties;
 
+    // Reverse of the serialized form written by encode().
+    public static IdMapping fromString(String serialized)
+    {
+        int biomeEnd = serialized.indexOf(IdMapping.separator1);
+
+        String biome = biomeEnd == -1 ? serialized : serialized.substring(0, biomeEnd);
+        String rest = biomeEnd == -1 ? "" : serialized.substring(biomeEnd + IdMapping.separator1.length());
+
+        int blockEnd = rest.indexOf(IdMapping.separator2);
+
+        if (blockEnd == -1) {
+            return new IdMapping(biome, rest, null);
+        }
+
+        Map<String, String> properties = new LinkedHashMap<>();
+
+        for (String property : rest.substring(blockEnd + IdMapping.separator2.length()).split("}")) {
+            if (property.isEmpty()) {
+                continue;
+            }
+
+            String[] keyValue = property.substring(1).split(":", 2);
+
+            properties.put(keyValue[0], keyValue.length > 1 ? keyValue[1] : "");
+        }
+
+        return new IdMapping(biome, rest.substring(0, blockEnd), properties);
+    }
+
     public IdMapping(String biome, String block, @Nullable Map<String, String> properties)
     {
         this.biome = biome;
@@ -59,8 +89,7 @@ public class IdMapping extends DataObject
         return this.properties;
     }
 
-    @Override
-    public void encode(Encoder encoder)
+    public String serialize()
     {
         StringBuilder propStringBuilder = new StringBuilder();
 
@@ -74,8 +103,12 @@ public class IdMapping extends DataObject
             }
         }
 
-        String serialized = this.biome + IdMapping.separator1 + this.block + (propStringBuilder.isEmpty() ? "" : IdMapping.separator2 + propStringBuilder);
+        return this.biome + IdMapping.separator1 + this.block + (propStringBuilder.isEmpty() ? "" : IdMapping.separator2 + propStringBuilder);
+    }
 
-        encoder.writeShortString(serialized);
+    @Override
+    public void encode(Encoder encoder)
+    {
+        encoder.writeShortString(this.serialize());
     }
 }
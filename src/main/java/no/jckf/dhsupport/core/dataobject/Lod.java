@@ -18,16 +18,24 @@
 
 package no.jckf.dhsupport.core.dataobject;
 
+import no.jckf.dhsupport.core.bytestream.Decoder;
 import no.jckf.dhsupport.core.bytestream.Encoder;
 import no.jckf.dhsupport.core.enums.CompressionType;
 import no.jckf.dhsupport.core.enums.GenerationStep;
 import no.jckf.dhsupport.core.world.WorldInterface;
 import org.tukaani.xz.LZMA2Options;
 import org.tukaani.xz.XZ;
+import org.tukaani.xz.XZInputStream;
 import org.tukaani.xz.XZOutputStream;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
@@ -52,6 +60,16 @@ public class Lod extends DataObject
 
     protected List<Beacon> beacons;
 
+    // Generation step of each column. Null means every column is fully generated.
+    @Nullable
+    protected byte[] columnGenerationSteps;
+
+    // For decoding.
+    public Lod()
+    {
+        this.beacons = new ArrayList<>();
+    }
+
     public Lod(WorldInterface worldInterface, SectionPosition position, List<IdMapping> idMappings, List<List<DataPoint>> columns, List<Beacon> beacons)
     {
         this.worldInterface = worldInterface;
@@ -61,6 +79,15 @@ public class Lod extends DataObject
         this.beacons = beacons;
     }
 
+    public Lod(SectionPosition position, List<IdMapping> idMappings, List<List<DataPoint>> columns, List<Beacon> beacons, @Nullable byte[] columnGenerationSteps)
+    {
+        this.position = position;
+        this.idMappings = idMappings;
+        this.columns = columns;
+        this.beacons = beacons;
+        this.columnGenerationSteps = columnGenerationSteps;
+    }
+
     protected void encodeData(Encoder encoder)
     {
         Encoder toCompress = new Encoder();
@@ -81,8 +108,12 @@ public class Lod extends DataObject
 
     protected void encodeColumnGenerationStep(Encoder encoder)
     {
-        byte[] bytesToCompress = new byte[Lod.width * Lod.width];
-        Arrays.fill(bytesToCompress, (byte) GenerationStep.LIGHT.value);
+        byte[] bytesToCompress = this.columnGenerationSteps;
+
+        if (bytesToCompress == null) {
+            bytesToCompress = new byte[Lod.width * Lod.width];
+            Arrays.fill(bytesToCompress, (byte) GenerationStep.LIGHT.value);
+        }
 
         byte[] compressed = this.compress(bytesToCompress);
 
@@ -141,6 +172,71 @@ public class Lod extends DataObject
         encoder.writeLong(now); // Updated at
     }
 
+    // Reads back what encode() wrote. Only the parts we need for merging LODs are kept.
+    @Override
+    public void decode(Decoder decoder)
+    {
+        this.position = new SectionPosition();
+        this.position.decode(decoder);
+
+        decoder.readInt(); // Checksum
+
+        try {
+            this.decodeData(this.decompress(decoder.readBytes(decoder.readInt())));
+
+            this.columnGenerationSteps = new byte[Lod.width * Lod.width];
+            this.decompress(decoder.readBytes(decoder.readInt())).readFully(this.columnGenerationSteps);
+
+            decoder.readBytes(decoder.readInt()); // World compression type
+
+            this.decodeMappings(this.decompress(decoder.readBytes(decoder.readInt())));
+        } catch (IOException exception) {
+            throw new RuntimeException("Could not decode LOD", exception);
+        }
+
+        // The rest is format version, compression type, flags and timestamps. We write our own when encoding.
+    }
+
+    protected void decodeData(DataInputStream input) throws IOException
+    {
+        this.columns = new ArrayList<>(Lod.width * Lod.width);
+
+        for (int columnNo = 0; columnNo < Lod.width * Lod.width; columnNo++) {
+            int size = input.readShort();
+
+            List<DataPoint> column = new ArrayList<>(size);
+
+            for (int i = 0; i < size; i++) {
+                DataPoint dataPoint = new DataPoint();
+                dataPoint.setData(input.readLong());
+
+                column.add(dataPoint);
+            }
+
+            this.columns.add(column);
+        }
+    }
+
+    protected void decodeMappings(DataInputStream input) throws IOException
+    {
+        int size = input.readInt();
+
+        this.idMappings = new ArrayList<>(size);
+
+        for (int i = 0; i < size; i++) {
+            byte[] serialized = new byte[input.readShort()];
+            input.readFully(serialized);
+
+            this.idMappings.add(IdMapping.fromString(new String(serialized, StandardCharsets.UTF_8)));
+        }
+    }
+
+    // The compressed streams are flushed, but never finished, so read exactly what we need and nothing more.
+    protected DataInputStream decompress(byte[] compressedData) throws IOException
+    {
+        return new DataInputStream(new XZInputStream(new ByteArrayInputStream(compressedData)));
+    }
+
     protected byte[] compress(byte[] uncompressedData)
     {
         ByteArrayOutputStream compressedStream = new ByteArrayOutputStream();
@@ -158,6 +254,32 @@ public class Lod extends DataObject
         return compressedStream.toByteArray();
     }
 
+    public SectionPosition getPosition()
+    {
+        return this.position;
+    }
+
+    public List<IdMapping> getIdMappings()
+    {
+        return this.idMappings;
+    }
+
+    public List<List<DataPoint>> getColumns()
+    {
+        return this.columns;
+    }
+
+    @Nullable
+    public byte[] getColumnGenerationSteps()
+    {
+        return this.columnGenerationSteps;
+    }
+
+    public void setBeacons(List<Beacon> beacons)
+    {
+        this.beacons = beacons;
+    }
+
     public List<Beacon> getBeacons()
     {
         return this.beacons;
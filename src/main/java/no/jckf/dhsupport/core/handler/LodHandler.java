@@ -22,13 +22,18 @@ import no.jckf.dhsupport.core.Coordinates;
 import no.jckf.dhsupport.core.DhSupport;
 import no.jckf.dhsupport.core.configuration.Configuration;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
+import no.jckf.dhsupport.core.dataobject.Lod;
 import no.jckf.dhsupport.core.dataobject.SectionPosition;
 import no.jckf.dhsupport.core.message.plugin.ExceptionMessage;
 import no.jckf.dhsupport.core.message.plugin.FullDataChunkMessage;
+import no.jckf.dhsupport.core.message.plugin.FullDataManifestRequestMessage;
+import no.jckf.dhsupport.core.message.plugin.FullDataManifestResponseMessage;
 import no.jckf.dhsupport.core.message.plugin.FullDataSourceRequestMessage;
 import no.jckf.dhsupport.core.message.plugin.FullDataSourceResponseMessage;
 import no.jckf.dhsupport.core.world.WorldInterface;
 import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
 
 import java.util.Arrays;
 import java.util.UUID;
@@ -49,18 +54,11 @@ public class LodHandler
 
     public void register()
     {
+        this.pluginMessageHandler.getEventBus().registerHandler(FullDataManifestRequestMessage.class, this::handleManifestRequest);
+
         this.pluginMessageHandler.getEventBus().registerHandler(FullDataSourceRequestMessage.class, (requestMessage) -> {
             //this.dhSupport.info("LOD request for " + requestMessage.getPosition().getX() + " " + requestMessage.getPosition().getZ());
 
-            if (requestMessage.getPosition().getDetailLevel() != 6) {
-                ExceptionMessage exceptionMessage = new ExceptionMessage();
-                exceptionMessage.isResponseTo(requestMessage);
-                exceptionMessage.setTypeId(ExceptionMessage.TYPE_SECTION_REQUIRES_SPLITTING);
-                exceptionMessage.setMessage("Only detail level 6 is supported");
-                this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
-                return;
-            }
-
             // TODO: Some sort of Player wrapper or interface object. Bukkit classes should not be imported here.
             UUID worldUuid = Bukkit.getPlayer(requestMessage.getSender()).getWorld().getUID();
 
@@ -69,6 +67,11 @@ public class LodHandler
             Configuration config = world.getConfig();
             Configuration playerConfig = this.dhSupport.getPlayerConfiguration(requestMessage.getSender());
 
+            // The player has left, or hasn't told us their configuration yet.
+            if (playerConfig == null) {
+                return;
+            }
+
             if (!config.getBool(DhsConfig.DISTANT_GENERATION_ENABLED) || !playerConfig.getBool(DhsConfig.DISTANT_GENERATION_ENABLED)) {
                 ExceptionMessage exceptionMessage = new ExceptionMessage();
                 exceptionMessage.isResponseTo(requestMessage);
@@ -80,9 +83,21 @@ public class LodHandler
 
             SectionPosition position = requestMessage.getPosition();
 
+            int detailLevel = position.getDetailLevel();
+
+            // Coarser LODs are merged from level 6, as long as the server allows it. Otherwise the client has to split.
+            if (detailLevel < 6 || detailLevel > config.getInt(DhsConfig.MAX_DETAIL_LEVEL, 6)) {
+                ExceptionMessage exceptionMessage = new ExceptionMessage();
+                exceptionMessage.isResponseTo(requestMessage);
+                exceptionMessage.setTypeId(ExceptionMessage.TYPE_SECTION_REQUIRES_SPLITTING);
+                exceptionMessage.setMessage("Detail level " + detailLevel + " is not supported");
+                this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+                return;
+            }
+
             String builderType = config.getString(DhsConfig.BUILDER_TYPE);
 
-            if (builderType.equalsIgnoreCase("none") && !this.dhSupport.getLodRepository().lodExists(worldUuid, position.getX(), position.getZ())) {
+            if (detailLevel == 6 && builderType.equalsIgnoreCase("none") && !this.dhSupport.getLodRepository().lodExists(worldUuid, position.getX(), position.getZ())) {
                 ExceptionMessage exceptionMessage = new ExceptionMessage();
                 exceptionMessage.isResponseTo(requestMessage);
                 exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
@@ -91,8 +106,11 @@ public class LodHandler
                 return;
             }
 
-            int worldX = Coordinates.sectionToBlock(position.getX());
-            int worldZ = Coordinates.sectionToBlock(position.getZ());
+            // Sections double in width for every detail level above 6.
+            int scale = detailLevel - 6;
+
+            int worldX = Coordinates.sectionToBlock(position.getX()) << scale;
+            int worldZ = Coordinates.sectionToBlock(position.getZ()) << scale;
 
             Integer borderCenterX = world.getWorldBorderX();
             Integer borderCenterZ = world.getWorldBorderZ();
@@ -105,8 +123,8 @@ public class LodHandler
                 int minZ = borderCenterZ - borderRadius;
                 int maxZ = borderCenterZ + borderRadius;
 
-                int higherLodX = worldX + 64;
-                int higherLodZ = worldZ + 64;
+                int higherLodX = worldX + (Lod.width << scale);
+                int higherLodZ = worldZ + (Lod.width << scale);
 
                 if (higherLodX < minX || worldX > maxX || higherLodZ < minZ || worldZ > maxZ) {
                     ExceptionMessage exceptionMessage = new ExceptionMessage();
@@ -135,61 +153,173 @@ public class LodHandler
                 }
             }*/
 
-            this.dhSupport.getLod(worldUuid, position)
-                .thenAccept((lodModel) -> {
-                    if (lodModel == null) {
-                        ExceptionMessage exceptionMessage = new ExceptionMessage();
-                        exceptionMessage.isResponseTo(requestMessage);
-                        exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
-                        exceptionMessage.setMessage("No LOD available");
-                        this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
-                        return;
-                    }
+            // Most login sync requests are for LODs that haven't changed. Check that without loading the whole LOD.
+            if (requestMessage.getTimestamp() != null) {
+                this.dhSupport.getLodTimestamp(worldUuid, position)
+                    .exceptionally((exception) -> null)
+                    .thenAccept((timestamp) -> {
+                        if (timestamp != null && (requestMessage.getTimestamp() / 1000) >= timestamp) {
+                            FullDataSourceResponseMessage responseMessage = new FullDataSourceResponseMessage();
+                            responseMessage.isResponseTo(requestMessage);
+                            this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), responseMessage);
+                            return;
+                        }
 
-                    FullDataSourceResponseMessage responseMessage = new FullDataSourceResponseMessage();
-                    responseMessage.isResponseTo(requestMessage);
+                        this.sendLod(requestMessage, worldUuid, playerConfig);
+                    });
+                return;
+            }
 
-                    boolean sendData = requestMessage.getTimestamp() == null || (requestMessage.getTimestamp() / 1000) < lodModel.getTimestamp();
+            this.sendLod(requestMessage, worldUuid, playerConfig);
+        });
+    }
 
-                    if (sendData) {
-                        int myBufferId = playerConfig.increment("buffer-id");
+    protected void sendLod(FullDataSourceRequestMessage requestMessage, UUID worldUuid, Configuration playerConfig)
+    {
+        this.dhSupport.getLod(worldUuid, requestMessage.getPosition())
+            .thenAccept((lodModel) -> {
+                if (lodModel == null) {
+                    ExceptionMessage exceptionMessage = new ExceptionMessage();
+                    exceptionMessage.isResponseTo(requestMessage);
+                    exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
+                    exceptionMessage.setMessage("No LOD available");
+                    this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+                    return;
+                }
 
-                        responseMessage.setBufferId(myBufferId);
-                        responseMessage.setBeacons(lodModel.getBeacons());
+                FullDataSourceResponseMessage responseMessage = new FullDataSourceResponseMessage();
+                responseMessage.isResponseTo(requestMessage);
 
-                        byte[] data = lodModel.getData();
+                boolean sendData = requestMessage.getTimestamp() == null || (requestMessage.getTimestamp() / 1000) < lodModel.getTimestamp();
 
-                        int chunkCount = (int) Math.ceil((double) data.length / CHUNK_SIZE);
+                if (sendData) {
+                    int myBufferId = playerConfig.increment("buffer-id");
 
-                        for (int chunkNo = 0; chunkNo < chunkCount; chunkNo++) {
-                            FullDataChunkMessage chunkResponse = new FullDataChunkMessage();
-                            chunkResponse.setBufferId(myBufferId);
-                            chunkResponse.setIsFirst(chunkNo == 0);
-                            chunkResponse.setData(Arrays.copyOfRange(
-                                data,
-                                CHUNK_SIZE * chunkNo,
-                                Math.min(CHUNK_SIZE * chunkNo + CHUNK_SIZE, data.length)
-                            ));
+                    responseMessage.setBufferId(myBufferId);
+                    responseMessage.setBeacons(lodModel.getBeacons());
 
-                            this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), chunkResponse);
-                        }
+                    byte[] data = lodModel.getData();
+
+                    int chunkCount = (int) Math.ceil((double) data.length / CHUNK_SIZE);
 
-                        //this.dhSupport.info("LOD in " + chunkCount + " parts sent for " + requestMessage.getPosition().getX() + " " + requestMessage.getPosition().getZ());
+                    for (int chunkNo = 0; chunkNo < chunkCount; chunkNo++) {
+                        FullDataChunkMessage chunkResponse = new FullDataChunkMessage();
+                        chunkResponse.setBufferId(myBufferId);
+                        chunkResponse.setIsFirst(chunkNo == 0);
+                        chunkResponse.setData(Arrays.copyOfRange(
+                            data,
+                            CHUNK_SIZE * chunkNo,
+                            Math.min(CHUNK_SIZE * chunkNo + CHUNK_SIZE, data.length)
+                        ));
+
+                        this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), chunkResponse);
                     }
 
-                    this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), responseMessage);
-                })
-                .exceptionally((exception) -> {
-                    exception.printStackTrace();
+                    //this.dhSupport.info("LOD in " + chunkCount + " parts sent for " + requestMessage.getPosition().getX() + " " + requestMessage.getPosition().getZ());
+                }
+
+                this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), responseMessage);
+            })
+            .exceptionally((exception) -> {
+                exception.printStackTrace();
 
+                ExceptionMessage exceptionMessage = new ExceptionMessage();
+                exceptionMessage.isResponseTo(requestMessage);
+                exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
+                exceptionMessage.setMessage("Internal error");
+                this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+
+                return null;
+            });
+    }
+
+    // Answer a whole region of login sync checks with one database query, instead of one LOD load per section.
+    protected void handleManifestRequest(FullDataManifestRequestMessage requestMessage)
+    {
+        // TODO: Some sort of Player wrapper or interface object. Bukkit classes should not be imported here.
+        Player player = Bukkit.getPlayer(requestMessage.getSender());
+
+        if (player == null) {
+            return;
+        }
+
+        UUID worldUuid = player.getWorld().getUID();
+
+        WorldInterface world = this.dhSupport.getWorldInterface(worldUuid);
+
+        if (world == null) {
+            return;
+        }
+
+        Configuration config = world.getConfig();
+        Configuration playerConfig = this.dhSupport.getPlayerConfiguration(requestMessage.getSender());
+
+        // The player has left, or hasn't told us their configuration yet.
+        if (playerConfig == null) {
+            return;
+        }
+
+        // Manifests are an extension of the protocol, so servers have to opt in.
+        if (!config.getBool(DhsConfig.LOGIN_DATA_SYNC_MANIFESTS_ENABLED, false)) {
+            ExceptionMessage exceptionMessage = new ExceptionMessage();
+            exceptionMessage.isResponseTo(requestMessage);
+            exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
+            exceptionMessage.setMessage("Server has disabled login data sync manifests");
+            this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+            return;
+        }
+
+        if (!config.getBool(DhsConfig.LOGIN_DATA_SYNC_ENABLED) || !playerConfig.getBool(DhsConfig.LOGIN_DATA_SYNC_ENABLED)) {
+            ExceptionMessage exceptionMessage = new ExceptionMessage();
+            exceptionMessage.isResponseTo(requestMessage);
+            exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
+            exceptionMessage.setMessage("Server has disabled login data sync");
+            this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+            return;
+        }
+
+        int regionX = requestMessage.getRegionX();
+        int regionZ = requestMessage.getRegionZ();
+
+        // Distance in chunks from the player to the nearest edge of the region.
+        Location location = player.getLocation();
+
+        int playerChunkX = Coordinates.blockToChunk(location.getBlockX());
+        int playerChunkZ = Coordinates.blockToChunk(location.getBlockZ());
+
+        int lowChunkX = Coordinates.sectionToChunk(Coordinates.regionToSection(regionX));
+        int lowChunkZ = Coordinates.sectionToChunk(Coordinates.regionToSection(regionZ));
+        int highChunkX = Coordinates.sectionToChunk(Coordinates.regionToSection(regionX + 1)) - 1;
+        int highChunkZ = Coordinates.sectionToChunk(Coordinates.regionToSection(regionZ + 1)) - 1;
+
+        int distanceX = Math.max(0, Math.max(lowChunkX - playerChunkX, playerChunkX - highChunkX));
+        int distanceZ = Math.max(0, Math.max(lowChunkZ - playerChunkZ, playerChunkZ - highChunkZ));
+
+        if (Math.max(distanceX, distanceZ) > config.getInt(DhsConfig.LOGIN_DATA_SYNC_RADIUS)) {
+            ExceptionMessage exceptionMessage = new ExceptionMessage();
+            exceptionMessage.isResponseTo(requestMessage);
+            exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
+            exceptionMessage.setMessage("Region is outside of login data sync radius");
+            this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+            return;
+        }
+
+        this.dhSupport.getLodRepository().loadRegionTimestampsAsync(worldUuid, regionX, regionZ)
+            .thenAccept((timestamps) -> {
+                if (timestamps == null) {
                     ExceptionMessage exceptionMessage = new ExceptionMessage();
                     exceptionMessage.isResponseTo(requestMessage);
                     exceptionMessage.setTypeId(ExceptionMessage.TYPE_REQUEST_REJECTED);
                     exceptionMessage.setMessage("Internal error");
                     this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), exceptionMessage);
+                    return;
+                }
 
-                    return null;
-                });
-        });
+                FullDataManifestResponseMessage responseMessage = new FullDataManifestResponseMessage();
+                responseMessage.isResponseTo(requestMessage);
+                responseMessage.setTimestamps(timestamps);
+
+                this.pluginMessageHandler.sendPluginMessage(requestMessage.getSender(), responseMessage);
+            });
     }
 }
@@ -60,6 +60,8 @@ public class PluginMessageHandler
         this.messageTypeRegistry.registerMessageType(7, FullDataSourceResponseMessage.class);
         this.messageTypeRegistry.registerMessageType(8, FullDataPartialUpdateMessage.class);
         this.messageTypeRegistry.registerMessageType(9, FullDataChunkMessage.class);
+        this.messageTypeRegistry.registerMessageType(10, FullDataManifestRequestMessage.class);
+        this.messageTypeRegistry.registerMessageType(11, FullDataManifestResponseMessage.class);
     }
 
     public void onEnable()
@@ -141,12 +143,54 @@ public class PluginMessageHandler
     }
 
     public void sendPluginMessage(UUID recipientUuid, PluginMessage message)
+    {
+        byte[] fullMessage = this.encodePluginMessage(message);
+
+        if (fullMessage == null) {
+            return;
+        }
+
+        this.sendRawPluginMessage(recipientUuid, fullMessage);
+    }
+
+    // Send a copy of an already encoded message, with the buffer ID at the given position replaced.
+    // This lets the same message go out to many players, who all have their own buffer IDs, while only encoding it once.
+    public void sendPluginMessage(UUID recipientUuid, byte[] fullMessage, int bufferIdPosition, int bufferId)
+    {
+        byte[] copy = fullMessage.clone();
+
+        copy[bufferIdPosition] = (byte) (bufferId >>> 24);
+        copy[bufferIdPosition + 1] = (byte) (bufferId >>> 16);
+        copy[bufferIdPosition + 2] = (byte) (bufferId >>> 8);
+        copy[bufferIdPosition + 3] = (byte) bufferId;
+
+        this.sendRawPluginMessage(recipientUuid, copy);
+    }
+
+    public void sendRawPluginMessage(UUID recipientUuid, byte[] fullMessage)
+    {
+        //this.dhSupport.info("Sending: " + Utils.bytesToHex(fullMessage));
+
+        this.dhSupport.getPluginMessageSender().sendPluginMessage(recipientUuid, this.pluginChannel, fullMessage);
+    }
+
+    // Position of the buffer ID within a message encoded by encodePluginMessage().
+    public int getBufferIdPosition(BufferedPluginMessage message)
+    {
+        // Protocol version and message type ID, followed by the tracker if there is one.
+        int headerLength = message instanceof TrackablePluginMessage ? 8 : 4;
+
+        return headerLength + message.getBufferIdOffset();
+    }
+
+    @Nullable
+    public byte[] encodePluginMessage(PluginMessage message)
     {
         int messageTypeId = this.messageTypeRegistry.getMessageTypeId(message.getClass());
 
         if (messageTypeId == -1) {
             this.dhSupport.warning("Trying to send unknown message type: " + message.getClass());
-            return;
+            return null;
         }
 
         byte[] data;
@@ -158,7 +202,7 @@ public class PluginMessageHandler
         } catch (Exception exception) {
             this.dhSupport.warning("Failed to encode " + message.getClass().getSimpleName());
             exception.printStackTrace();
-            return;
+            return null;
         }
 
         Encoder encoder = new Encoder();
@@ -172,10 +216,6 @@ public class PluginMessageHandler
 
         encoder.write(data);
 
-        byte[] fullMessage = encoder.toByteArray();
-
-        //this.dhSupport.info("Sending: " + Utils.bytesToHex(fullMessage));
-
-        this.dhSupport.getPluginMessageSender().sendPluginMessage(recipientUuid, this.pluginChannel, fullMessage);
+        return encoder.toByteArray();
     }
 }
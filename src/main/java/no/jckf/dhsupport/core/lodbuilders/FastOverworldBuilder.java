@@ -18,206 +18,263 @@
 
 package no.jckf.dhsupport.core.lodbuilders;
 
-import no.jckf.dhsupport.core.Coordinates;
 import no.jckf.dhsupport.core.configuration.DhsConfig;
 import no.jckf.dhsupport.core.dataobject.*;
 import no.jckf.dhsupport.core.world.WorldInterface;
 
 import javax.annotation.Nullable;
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 public class FastOverworldBuilder extends LodBuilder
 {
+    protected int minY;
+
+    protected int maxY;
+
+    protected int height;
+
+    protected int seaLevel;
+
+    protected int relativeSeaLevel;
+
+    protected int originalStep;
+
+    protected boolean scanToSeaLevel;
+
+    protected boolean underfill;
+
+    protected boolean includeNonCollidingTopLayer;
+
+    protected boolean sampleBiomes3d;
+
+    protected boolean skipUniformSections;
+
     public FastOverworldBuilder(WorldInterface worldInterface, SectionPosition position)
     {
         super(worldInterface, position);
+
+        this.includeBeacons = true;
     }
 
-    public Lod generate()
+    @Override
+    protected void prepare()
     {
-        int minY = this.worldInterface.getMinY();
-        int maxY = this.worldInterface.getMaxY();
-        int height = maxY - minY;
+        this.minY = this.worldInterface.getMinY();
+        this.maxY = this.worldInterface.getMaxY();
+        this.height = this.maxY - this.minY;
 
-        int seaLevel = this.worldInterface.getSeaLevel();
-        int relativeSeaLevel = seaLevel - minY;
+        this.seaLevel = this.worldInterface.getSeaLevel();
+        this.relativeSeaLevel = this.seaLevel - this.minY;
 
-        int offsetX = Coordinates.sectionToBlock(this.position.getX());
-        int offsetZ = Coordinates.sectionToBlock(this.position.getZ());
+        this.originalStep = Math.max(1, this.worldInterface.getConfig().getInt(DhsConfig.BUILDER_RESOLUTION, 1));
 
-        int yStep = 1;//this.worldInterface.getConfig().getInt(DhsConfig.BUILDER_RESOLUTION);
-        int originalStep = yStep;
+        this.scanToSeaLevel = this.worldInterface.getConfig().getBool(DhsConfig.SCAN_TO_SEA_LEVEL, false);
+        this.underfill = this.worldInterface.getConfig().getBool(DhsConfig.FAST_UNDERFILL, true);
+        this.includeNonCollidingTopLayer = this.worldInterface.getConfig().getBool(DhsConfig.INCLUDE_NON_COLLIDING_TOP_LAYER, true);
+        this.sampleBiomes3d = this.worldInterface.getConfig().getBool(DhsConfig.SAMPLE_BIOMES_3D, false);
 
-        boolean scanToSeaLevel = this.worldInterface.getConfig().getBool(DhsConfig.SCAN_TO_SEA_LEVEL, false);
-        boolean underfill = this.worldInterface.getConfig().getBool(DhsConfig.FAST_UNDERFILL, true);
-        boolean includeNonCollidingTopLayer = this.worldInterface.getConfig().getBool(DhsConfig.INCLUDE_NON_COLLIDING_TOP_LAYER, true);
-        boolean sampleBiomes3d = this.worldInterface.getConfig().getBool(DhsConfig.SAMPLE_BIOMES_3D, false);
+        // Biomes can change within a uniform section, so only skip through sections when sampling a single biome per column.
+        this.skipUniformSections = !this.sampleBiomes3d;
+    }
 
-        List<IdMapping> idMappings = new ArrayList<>();
-        Map<String, Integer> mapMap = new HashMap<>();
+    @Override
+    protected List<DataPoint> generateColumn(int worldX, int worldZ)
+    {
+        int minY = this.minY;
+        int maxY = this.maxY;
+        int height = this.height;
 
-        List<List<DataPoint>> columns = new ArrayList<>();
+        int originalStep = this.originalStep;
+        int yStep = originalStep;
 
-        List<Beacon> beacons = new ArrayList<>();
+        // Actual Y of top-most block.
+        int topLayer = this.worldInterface.getHighestYAt(worldX, worldZ);
+        int hardTopLayer = topLayer;
 
-        for (int relativeX = 0; relativeX < Lod.width; relativeX++) {
-            for (int relativeZ = 0; relativeZ < Lod.width; relativeZ++) {
-                int worldX = offsetX + relativeX;
-                int worldZ = offsetZ + relativeZ;
+        if (this.includeNonCollidingTopLayer) {
+            outer: while (topLayer + 1 < maxY) {
+                String topSample = this.worldInterface.getMaterialAt(worldX, topLayer + 1, worldZ);
 
-                // Actual Y of top-most block.
-                int topLayer = this.worldInterface.getHighestYAt(worldX, worldZ);
-                int hardTopLayer = topLayer;
+                switch (topSample) {
+                    case "minecraft:air":
+                    case "minecraft:void_air":
+                        break outer;
+                }
 
-                if (includeNonCollidingTopLayer) {
-                    outer: while (topLayer + 1 < maxY) {
-                        String topSample = this.worldInterface.getMaterialAt(worldX, topLayer + 1, worldZ);
+                topLayer++;
+            }
+        }
 
-                        switch (topSample) {
-                            case "minecraft:air":
-                            case "minecraft:void_air":
-                                break outer;
-                        }
+        // If these differ, the top layer is non-colliding and likely requires yStep=1.
+        if (topLayer != hardTopLayer) {
+            yStep = 1;
+        }
 
-                        topLayer++;
-                    }
-                }
+        // Distance from bottom to top-most block.
+        int relativeTopLayer = topLayer - minY;
 
-                // If these differ, the top layer is non-colliding and likely requires yStep=1.
-                if (topLayer != hardTopLayer) {
-                    yStep = 1;
-                }
+        String biome = "";
 
-                // Distance from bottom to top-most block.
-                int relativeTopLayer = topLayer - minY;
+        if (!this.sampleBiomes3d) {
+            biome = this.worldInterface.getBiomeAt(worldX, worldZ);
+        }
 
-                String biome = "";
+        List<DataPoint> column = new ArrayList<>();
 
-                if (!sampleBiomes3d) {
-                    biome = this.worldInterface.getBiomeAt(worldX, worldZ);
-                }
+        @Nullable
+        DataPoint previous = null;
 
-                List<DataPoint> column = new ArrayList<>();
+        @Nullable
+        Integer solidGround = null;
 
-                @Nullable
-                DataPoint previous = null;
+        // When a coarse step is cut short, its low end becomes the top of the next step. What was read there is kept for reuse.
+        int sampledY = Integer.MIN_VALUE;
 
-                @Nullable
-                Integer solidGround = null;
+        @Nullable
+        String sampledMaterial = null;
 
-                int firstY = height - yStep;
+        @Nullable
+        String sampledState = null;
 
-                for (int relativeY = firstY; (solidGround == null || relativeY >= solidGround) && relativeY >= 1 - yStep; relativeY -= yStep) {
-                    int thisStep = yStep;
+        @Nullable
+        String sampledBiome = null;
 
-                    if (relativeY < 0) {
-                        thisStep -= -relativeY;
-                        relativeY = 0;
-                    }
+        int firstY = height - yStep;
 
-                    int lowWorldY = minY + relativeY;
-                    int highWorldY = lowWorldY + thisStep - 1;
+        for (int relativeY = firstY; (solidGround == null || relativeY >= solidGround) && relativeY >= 1 - yStep; relativeY -= yStep) {
+            int thisStep = yStep;
 
-                    // We've reached the top-most colliding block. Restore yStep.
-                    if (highWorldY == hardTopLayer) {
-                        yStep = originalStep;
-                    }
+            if (relativeY < 0) {
+                thisStep -= -relativeY;
+                relativeY = 0;
+            }
 
-                    String material = this.worldInterface.getMaterialAt(worldX, highWorldY, worldZ);
-
-                    if (this.worldInterface.isBeacon(worldX, highWorldY, worldZ)) {
-                        beacons.add(new Beacon(
-                            worldX,
-                            highWorldY,
-                            worldZ,
-                            worldInterface.getBeaconColor(
-                                worldX,
-                                highWorldY,
-                                worldZ
-                            )
-                        ));
-                    }
+            int lowWorldY = minY + relativeY;
+            int highWorldY = lowWorldY + thisStep - 1;
 
-                    if (solidGround == null && (!scanToSeaLevel || highWorldY <= seaLevel)) {
-                        switch (material) {
-                            case "minecraft:stone":
-                            case "minecraft:grass":
-                            case "minecraft:dirt":
-                            case "minecraft:gravel":
-                            case "minecraft:sand":
-                            case "minecraft:sandstone":
-                            case "minecraft:mycelium":
-                                solidGround = Math.min(relativeY - 10, relativeSeaLevel - 10);
-                        }
-                    }
+            // We've reached the top-most colliding block. Restore yStep.
+            if (highWorldY == hardTopLayer) {
+                yStep = originalStep;
+            }
 
-                    if (sampleBiomes3d) {
-                        biome = this.worldInterface.getBiomeAt(worldX, highWorldY, worldZ);
-                    }
+            String material;
 
-                    String compositeKey = biome + "|" + material;
+            @Nullable
+            String topBiome = null;
+
+            if (highWorldY == sampledY && sampledMaterial != null) {
+                material = sampledMaterial;
+                topBiome = sampledBiome;
+            } else {
+                material = this.worldInterface.getMaterialAt(worldX, highWorldY, worldZ);
+            }
+
+            if (!(relativeY == firstY && (material.equals("minecraft:air") || material.equals("minecraft:void_air")))) {
+                if (this.skipUniformSections && this.worldInterface.isSectionUniform(worldX, highWorldY, worldZ)) {
+                    // Every block from here down to the bottom of this chunk section is identical. Take all of them in one go.
+                    lowWorldY = minY + ((highWorldY - minY) & ~15);
+                    relativeY = lowWorldY - minY;
+                    thisStep = highWorldY - lowWorldY + 1;
+                } else if (thisStep > 1) {
+                    // A coarse step is only trusted when the blocks at both ends of it agree. Only the low end is read here, and
+                    // its biome only when the materials already agree.
+                    String lowMaterial = this.worldInterface.getMaterialAt(worldX, lowWorldY, worldZ);
 
                     @Nullable
-                    Integer id = mapMap.get(compositeKey);
+                    String lowBiome = null;
 
-                    if (id == null) {
-                        idMappings.add(new IdMapping(biome, material, null));
-                        id = idMappings.size() - 1;
-                        mapMap.put(compositeKey, id);
-                    }
+                    boolean agrees = lowMaterial.equals(material);
+
+                    if (agrees && this.sampleBiomes3d) {
+                        topBiome = topBiome != null ? topBiome : this.worldInterface.getBiomeAt(worldX, highWorldY, worldZ);
+                        lowBiome = this.worldInterface.getBiomeAt(worldX, lowWorldY, worldZ);
 
-                    DataPoint point;
+                        agrees = lowBiome.equals(topBiome);
+                    }
 
-                    if (previous != null && previous.getMappingId() == id) {
-                        point = previous;
+                    if (!agrees) {
+                        // There is a transition somewhere inside the step, so we only consume the top block here and let the next
+                        // step start right below it.
+                        sampledY = lowWorldY;
+                        sampledMaterial = lowMaterial;
+                        sampledBiome = lowBiome;
 
-                        point.setStartY(point.getStartY() - thisStep);
-                        point.setHeight(point.getHeight() + thisStep);
-                    } else {
-                        point = new DataPoint();
-                        column.add(point);
-
-                        point.setStartY(relativeY);
-                        point.setHeight(thisStep);
-                        point.setMappingId(id);
-
-                        if (highWorldY + 1 < maxY) {
-                            point.setSkyLight(this.worldInterface.getSkyLightAt(worldX, highWorldY + 1, worldZ));
-                            point.setBlockLight(this.worldInterface.getBlockLightAt(worldX, highWorldY + 1, worldZ));
-                        }
-
-                        if (material.equals("minecraft:air") || material.equals("minecraft:void_air")) {
-                            // Start by filling the top of the column with air, then jump down to the top layer.
-                            if (relativeY == firstY) {
-                                point.setStartY(relativeTopLayer + 1);
-                                point.setHeight(height - relativeTopLayer);
-
-                                relativeY = point.getStartY();
-                            } else {
-                                // Encountered air that is below a non-air block. Set yStep=1 to avoid stretching the air into the ground or sea.
-                                yStep = 1;
-                            }
-                        } else {
-                            // Entered a new material. Reset yStep in case we came from air with yStep=1.
-                            yStep = originalStep;
-                        }
+                        thisStep = 1;
+                        relativeY = highWorldY - minY;
+                        lowWorldY = highWorldY;
                     }
+                }
+            }
 
-                    previous = point;
+            if (solidGround == null && (!this.scanToSeaLevel || highWorldY <= this.seaLevel)) {
+                switch (material) {
+                    case "minecraft:stone":
+                    case "minecraft:grass":
+                    case "minecraft:dirt":
+                    case "minecraft:gravel":
+                    case "minecraft:sand":
+                    case "minecraft:sandstone":
+                    case "minecraft:mycelium":
+                        solidGround = Math.min(highWorldY - minY - 10, this.relativeSeaLevel - 10);
                 }
+            }
+
+            if (this.sampleBiomes3d) {
+                biome = topBiome != null ? topBiome : this.worldInterface.getBiomeAt(worldX, highWorldY, worldZ);
+            }
 
-                if (underfill && previous != null) {
-                    previous.setHeight(previous.getStartY() + previous.getHeight());
-                    previous.setStartY(0);
+            String mappingBiome = biome;
+
+            String compositeKey = biome + "|" + material;
+
+            int id = this.getMappingId(compositeKey, () -> new IdMapping(mappingBiome, material, null));
+
+            DataPoint point;
+
+            if (previous != null && previous.getMappingId() == id) {
+                point = previous;
+
+                point.setStartY(point.getStartY() - thisStep);
+                point.setHeight(point.getHeight() + thisStep);
+            } else {
+                point = new DataPoint();
+                column.add(point);
+
+                point.setStartY(relativeY);
+                point.setHeight(thisStep);
+                point.setMappingId(id);
+
+                if (highWorldY + 1 < maxY) {
+                    point.setSkyLight(this.worldInterface.getSkyLightAt(worldX, highWorldY + 1, worldZ));
+                    point.setBlockLight(this.worldInterface.getBlockLightAt(worldX, highWorldY + 1, worldZ));
                 }
 
-                columns.add(column);
+                if (material.equals("minecraft:air") || material.equals("minecraft:void_air")) {
+                    // Start by filling the top of the column with air, then jump down to the top layer.
+                    if (relativeY == firstY) {
+                        point.setStartY(relativeTopLayer + 1);
+                        point.setHeight(height - relativeTopLayer);
+
+                        relativeY = point.getStartY();
+                    } else {
+                        // Encountered air that is below a non-air block. Set yStep=1 to avoid stretching the air into the ground or sea.
+                        yStep = 1;
+                    }
+                } else {
+                    // Entered a new material. Reset yStep in case we came from air with yStep=1.
+                    yStep = originalStep;
+                }
             }
+
+            previous = point;
+        }
+
+        if (this.underfill && previous != null) {
+            previous.setHeight(previous.getStartY() + previous.getHeight());
+            previous.setStartY(0);
         }
 
-        return new Lod(this.worldInterface, this.position, idMappings, columns, beacons);
+        return column;
     }
 }
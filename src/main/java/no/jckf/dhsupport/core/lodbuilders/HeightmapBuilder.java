@@ -0,0 +1,114 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.lodbuilders;
+
+import no.jckf.dhsupport.core.dataobject.*;
+import no.jckf.dhsupport.core.world.WorldInterface;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Builds LODs from the heightmaps alone, without scanning through the blocks of each column.
+// Every column gets at most three data points: air above the surface, the surface layer (water, leaves, etc.) if the
+// top block is above the ocean floor, and the ground below, filled all the way down.
+// Caves, overhangs and anything else below the surface are lost, so this is best suited for distant terrain.
+public class HeightmapBuilder extends LodBuilder
+{
+    protected static final String AIR = "minecraft:air";
+
+    protected int minY;
+
+    protected int maxY;
+
+    public HeightmapBuilder(WorldInterface worldInterface, SectionPosition position)
+    {
+        super(worldInterface, position);
+    }
+
+    @Override
+    protected void prepare()
+    {
+        this.minY = this.worldInterface.getMinY();
+        this.maxY = this.worldInterface.getMaxY();
+    }
+
+    @Override
+    protected List<DataPoint> generateColumn(int worldX, int worldZ)
+    {
+        String biome = this.worldInterface.getBiomeAt(worldX, worldZ);
+
+        // Top-most block of any kind.
+        int surfaceY = Math.max(this.minY, Math.min(this.worldInterface.getHighestYAt(worldX, worldZ), this.maxY - 1));
+
+        String surfaceMaterial = this.worldInterface.getMaterialAt(worldX, surfaceY, worldZ);
+
+        // Some heightmaps point at the first free block rather than the last used one.
+        if (this.isAir(surfaceMaterial) && surfaceY > this.minY) {
+            surfaceY--;
+            surfaceMaterial = this.worldInterface.getMaterialAt(worldX, surfaceY, worldZ);
+        }
+
+        // Top-most solid block. Below the surface when there's water or vegetation on top.
+        int floorY = Math.max(this.minY, Math.min(this.worldInterface.getOceanFloorYAt(worldX, worldZ), surfaceY));
+
+        List<DataPoint> column = new ArrayList<>(3);
+
+        if (surfaceY + 1 < this.maxY) {
+            column.add(this.createDataPoint(worldX, worldZ, biome, AIR, surfaceY + 1, this.maxY - 1));
+        }
+
+        if (floorY < surfaceY) {
+            column.add(this.createDataPoint(worldX, worldZ, biome, surfaceMaterial, floorY + 1, surfaceY));
+
+            String floorMaterial = this.worldInterface.getMaterialAt(worldX, floorY, worldZ);
+
+            column.add(this.createDataPoint(worldX, worldZ, biome, floorMaterial, this.minY, floorY));
+        } else {
+            column.add(this.createDataPoint(worldX, worldZ, biome, surfaceMaterial, this.minY, surfaceY));
+        }
+
+        return column;
+    }
+
+    // Data point covering lowWorldY to highWorldY, both inclusive. Light is sampled just above the top.
+    protected DataPoint createDataPoint(int worldX, int worldZ, String biome, String material, int lowWorldY, int highWorldY)
+    {
+        int id = this.getMappingId(biome + "|" + material, () -> new IdMapping(biome, material, null));
+
+        DataPoint point = new DataPoint();
+
+        point.setStartY(lowWorldY - this.minY);
+        point.setHeight(highWorldY - lowWorldY + 1);
+        point.setMappingId(id);
+
+        if (highWorldY + 1 < this.maxY) {
+            point.setSkyLight(this.worldInterface.getSkyLightAt(worldX, highWorldY + 1, worldZ));
+            point.setBlockLight(this.worldInterface.getBlockLightAt(worldX, highWorldY + 1, worldZ));
+        } else {
+            point.setSkyLight((byte) 15);
+        }
+
+        return point;
+    }
+
+    protected boolean isAir(String material)
+    {
+        return material.equals(AIR) || material.equals("minecraft:void_air") || material.equals("minecraft:cave_air");
+    }
+}
@@ -18,21 +18,298 @@
 
 package no.jckf.dhsupport.core.lodbuilders;
 
+import no.jckf.dhsupport.core.Coordinates;
+import no.jckf.dhsupport.core.dataobject.Beacon;
+import no.jckf.dhsupport.core.dataobject.BlockPosition;
+import no.jckf.dhsupport.core.dataobject.DataPoint;
+import no.jckf.dhsupport.core.dataobject.IdMapping;
 import no.jckf.dhsupport.core.dataobject.Lod;
 import no.jckf.dhsupport.core.dataobject.SectionPosition;
+import no.jckf.dhsupport.core.enums.GenerationStep;
 import no.jckf.dhsupport.core.world.WorldInterface;
 
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
 public abstract class LodBuilder
 {
+    // Number of X rows processed by each task when a build is split.
+    protected static final int STRIP_WIDTH = 8;
+
     protected WorldInterface worldInterface;
 
     protected SectionPosition position;
 
+    protected boolean splitColumns = false;
+
+    protected boolean includeBeacons = false;
+
+    protected List<IdMapping> idMappings = new ArrayList<>();
+
+    protected Map<String, Integer> mapMap = new ConcurrentHashMap<>();
+
+    protected List<Beacon> beacons = Collections.synchronizedList(new ArrayList<>());
+
     public LodBuilder(WorldInterface worldInterface, SectionPosition position)
     {
         this.worldInterface = worldInterface;
         this.position = position;
     }
 
-    public abstract Lod generate();
+    public void setSplitColumns(boolean splitColumns)
+    {
+        this.splitColumns = splitColumns;
+    }
+
+    public boolean getSplitColumns()
+    {
+        return this.splitColumns;
+    }
+
+    public Lod generate()
+    {
+        this.prepare();
+
+        int offsetX = Coordinates.sectionToBlock(this.position.getX());
+        int offsetZ = Coordinates.sectionToBlock(this.position.getZ());
+
+        // Start looking for beacons right away, so the hop to the region thread overlaps with building the columns.
+        @Nullable
+        CompletableFuture<List<BlockPosition>> beaconPositions = this.findBeacons(offsetX, offsetZ);
+
+        List<List<DataPoint>> columns = new ArrayList<>(Collections.nCopies(Lod.width * Lod.width, null));
+
+        // Splitting only makes sense if we're already running on a work-stealing pool.
+        if (this.splitColumns && ForkJoinTask.inForkJoinPool()) {
+            this.generateStrips(offsetX, offsetZ, columns);
+        } else {
+            this.generateStrip(offsetX, offsetZ, 0, Lod.width, columns);
+        }
+
+        this.collectBeacons(beaconPositions);
+
+        return new Lod(this.worldInterface, this.position, this.idMappings, columns, this.beacons);
+    }
+
+    // Rebuild only some columns of an existing LOD. Bit N of dirtyColumns stands for the column at index N.
+    public Lod patch(Lod existing, long[] dirtyColumns)
+    {
+        this.prepare();
+
+        int offsetX = Coordinates.sectionToBlock(this.position.getX());
+        int offsetZ = Coordinates.sectionToBlock(this.position.getZ());
+
+        @Nullable
+        CompletableFuture<List<BlockPosition>> beaconPositions = this.findBeacons(offsetX, offsetZ);
+
+        List<List<DataPoint>> columns = new ArrayList<>(existing.getColumns());
+        List<IdMapping> idMappings = new ArrayList<>(existing.getIdMappings());
+
+        // The new columns use this builder's own mappings. Translate them to the existing ones, adding any that are missing.
+        Map<String, Integer> existingIds = new HashMap<>();
+
+        for (int id = 0; id < idMappings.size(); id++) {
+            existingIds.putIfAbsent(idMappings.get(id).serialize(), id);
+        }
+
+        @Nullable
+        byte[] generationSteps = existing.getColumnGenerationSteps();
+
+        if (generationSteps != null) {
+            generationSteps = generationSteps.clone();
+        }
+
+        // Chunks that contain at least one rebuilt column, indexed by relative chunk X * 4 + relative chunk Z.
+        boolean[] rebuiltChunks = new boolean[(Lod.width / 16) * (Lod.width / 16)];
+
+        for (int columnNo = 0; columnNo < Lod.width * Lod.width; columnNo++) {
+            if ((dirtyColumns[columnNo >> 6] & (1L << (columnNo & 63))) == 0) {
+                continue;
+            }
+
+            List<DataPoint> column = this.generateColumn(offsetX + columnNo / Lod.width, offsetZ + columnNo % Lod.width);
+
+            for (DataPoint dataPoint : column) {
+                IdMapping mapping = this.idMappings.get(dataPoint.getMappingId());
+
+                dataPoint.setMappingId(existingIds.computeIfAbsent(mapping.serialize(), (serialized) -> {
+                    idMappings.add(mapping);
+
+                    return idMappings.size() - 1;
+                }));
+            }
+
+            columns.set(columnNo, column);
+
+            rebuiltChunks[this.getChunkIndex(columnNo / Lod.width, columnNo % Lod.width)] = true;
+
+            if (generationSteps != null) {
+                generationSteps[columnNo] = (byte) GenerationStep.LIGHT.value;
+            }
+        }
+
+        this.collectBeacons(beaconPositions);
+
+        // Only the rebuilt chunks were searched with certainty. Beacons stored for the other chunks are kept as they were.
+        List<Beacon> beacons = new ArrayList<>();
+
+        for (Beacon beacon : existing.getBeacons()) {
+            if (!rebuiltChunks[this.getChunkIndex(beacon.getPosition().getX() - offsetX, beacon.getPosition().getZ() - offsetZ)]) {
+                beacons.add(beacon);
+            }
+        }
+
+        for (Beacon beacon : this.beacons) {
+            if (rebuiltChunks[this.getChunkIndex(beacon.getPosition().getX() - offsetX, beacon.getPosition().getZ() - offsetZ)]) {
+                beacons.add(beacon);
+            }
+        }
+
+        return new Lod(this.position, this.compactIdMappings(idMappings, columns), columns, beacons, generationSteps);
+    }
+
+    protected int getChunkIndex(int relativeX, int relativeZ)
+    {
+        return Math.floorDiv(relativeX, 16) * (Lod.width / 16) + Math.floorDiv(relativeZ, 16);
+    }
+
+    // Drop mappings that no column refers to any more, and renumber the data points to match.
+    protected List<IdMapping> compactIdMappings(List<IdMapping> idMappings, List<List<DataPoint>> columns)
+    {
+        int[] newIds = new int[idMappings.size()];
+
+        Arrays.fill(newIds, -1);
+
+        List<IdMapping> compacted = new ArrayList<>();
+
+        for (List<DataPoint> column : columns) {
+            for (DataPoint dataPoint : column) {
+                int oldId = dataPoint.getMappingId();
+
+                if (newIds[oldId] == -1) {
+                    newIds[oldId] = compacted.size();
+                    compacted.add(idMappings.get(oldId));
+                }
+
+                dataPoint.setMappingId(newIds[oldId]);
+            }
+        }
+
+        return compacted;
+    }
+
+    @Nullable
+    protected CompletableFuture<List<BlockPosition>> findBeacons(int offsetX, int offsetZ)
+    {
+        if (!this.includeBeacons) {
+            return null;
+        }
+
+        return this.worldInterface.getActiveBeaconsAsync(offsetX, offsetZ, offsetX + Lod.width - 1, offsetZ + Lod.width - 1);
+    }
+
+    protected void collectBeacons(@Nullable CompletableFuture<List<BlockPosition>> beaconPositions)
+    {
+        if (beaconPositions == null) {
+            return;
+        }
+
+        for (BlockPosition beaconPosition : beaconPositions.join()) {
+            this.beacons.add(new Beacon(
+                beaconPosition,
+                this.worldInterface.getBeaconColor(beaconPosition.getX(), beaconPosition.getY(), beaconPosition.getZ())
+            ));
+        }
+    }
+
+    // Idle workers may steal helpers that claim strips, while this thread claims strips as well. Nothing is joined, so the
+    // pool never has to start extra threads to make up for a blocked worker. The wait at the end is at most one strip long.
+    protected void generateStrips(int offsetX, int offsetZ, List<List<DataPoint>> columns)
+    {
+        int stripCount = Lod.width / STRIP_WIDTH;
+
+        AtomicInteger nextStrip = new AtomicInteger();
+        CountDownLatch stripsDone = new CountDownLatch(stripCount);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        Runnable claimStrips = () -> {
+            int stripNo;
+
+            while ((stripNo = nextStrip.getAndIncrement()) < stripCount) {
+                try {
+                    this.generateStrip(offsetX, offsetZ, stripNo * STRIP_WIDTH, (stripNo + 1) * STRIP_WIDTH, columns);
+                } catch (Throwable exception) {
+                    failure.compareAndSet(null, exception);
+                } finally {
+                    stripsDone.countDown();
+                }
+            }
+        };
+
+        for (int helperNo = 1; helperNo < stripCount; helperNo++) {
+            ForkJoinTask.adapt(claimStrips).fork();
+        }
+
+        claimStrips.run();
+
+        try {
+            stripsDone.await();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            throw new RuntimeException(exception);
+        }
+
+        if (failure.get() != null) {
+            throw new RuntimeException(failure.get());
+        }
+    }
+
+    protected void generateStrip(int offsetX, int offsetZ, int fromX, int toX, List<List<DataPoint>> columns)
+    {
+        for (int relativeX = fromX; relativeX < toX; relativeX++) {
+            for (int relativeZ = 0; relativeZ < Lod.width; relativeZ++) {
+                columns.set(relativeX * Lod.width + relativeZ, this.generateColumn(offsetX + relativeX, offsetZ + relativeZ));
+            }
+        }
+    }
+
+    protected int getMappingId(String compositeKey, Supplier<IdMapping> mappingSupplier)
+    {
+        // Almost every block has a mapping already, and finding it shouldn't make parallel strips wait for each other.
+        Integer id = this.mapMap.get(compositeKey);
+
+        if (id != null) {
+            return id;
+        }
+
+        return this.mapMap.computeIfAbsent(compositeKey, (key) -> {
+            IdMapping mapping = mappingSupplier.get();
+
+            synchronized (this.idMappings) {
+                this.idMappings.add(mapping);
+
+                return this.idMappings.size() - 1;
+            }
+        });
+    }
+
+    protected void prepare()
+    {
+
+    }
+
+    protected abstract List<DataPoint> generateColumn(int worldX, int worldZ);
 }
@@ -0,0 +1,150 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.lodbuilders;
+
+import no.jckf.dhsupport.core.dataobject.Beacon;
+import no.jckf.dhsupport.core.dataobject.DataPoint;
+import no.jckf.dhsupport.core.dataobject.IdMapping;
+import no.jckf.dhsupport.core.dataobject.Lod;
+import no.jckf.dhsupport.core.dataobject.SectionPosition;
+import no.jckf.dhsupport.core.enums.GenerationStep;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Builds a LOD at a coarser detail level from the four LODs one level below it.
+// Each child covers one quadrant of the parent. Every column in the parent stands for 2x2 columns in a child, and we
+// keep the tallest of those, so that peaks and walls don't disappear in the distance.
+public class LodMerger
+{
+    protected SectionPosition position;
+
+    // Indexed by relative X * 2 + relative Z. Missing children are null.
+    protected Lod[] children;
+
+    protected List<IdMapping> idMappings = new ArrayList<>();
+
+    protected Map<String, Integer> mapMap = new HashMap<>();
+
+    public LodMerger(SectionPosition position, Lod[] children)
+    {
+        this.position = position;
+        this.children = children;
+    }
+
+    public Lod merge()
+    {
+        int half = Lod.width / 2;
+
+        List<List<DataPoint>> columns = new ArrayList<>(Lod.width * Lod.width);
+
+        byte[] generationSteps = new byte[Lod.width * Lod.width];
+
+        List<Beacon> beacons = new ArrayList<>();
+
+        // Mapping IDs in each child, translated to mapping IDs in the parent.
+        int[][] translations = new int[this.children.length][];
+
+        for (int childNo = 0; childNo < this.children.length; childNo++) {
+            if (this.children[childNo] == null) {
+                continue;
+            }
+
+            translations[childNo] = new int[this.children[childNo].getIdMappings().size()];
+
+            for (int mappingId = 0; mappingId < translations[childNo].length; mappingId++) {
+                translations[childNo][mappingId] = this.getMappingId(this.children[childNo].getIdMappings().get(mappingId));
+            }
+
+            beacons.addAll(this.children[childNo].getBeacons());
+        }
+
+        for (int relativeX = 0; relativeX < Lod.width; relativeX++) {
+            for (int relativeZ = 0; relativeZ < Lod.width; relativeZ++) {
+                int childNo = (relativeX / half) * 2 + (relativeZ / half);
+
+                @Nullable
+                Lod child = this.children[childNo];
+
+                if (child == null) {
+                    columns.add(new ArrayList<>());
+                    generationSteps[relativeX * Lod.width + relativeZ] = (byte) GenerationStep.EMPTY.value;
+                    continue;
+                }
+
+                int childX = (relativeX % half) * 2;
+                int childZ = (relativeZ % half) * 2;
+
+                int bestIndex = childX * Lod.width + childZ;
+                int bestTop = Integer.MIN_VALUE;
+
+                for (int offsetX = 0; offsetX < 2; offsetX++) {
+                    for (int offsetZ = 0; offsetZ < 2; offsetZ++) {
+                        int index = (childX + offsetX) * Lod.width + (childZ + offsetZ);
+
+                        int top = this.getTop(child.getColumns().get(index));
+
+                        if (top > bestTop) {
+                            bestTop = top;
+                            bestIndex = index;
+                        }
+                    }
+                }
+
+                List<DataPoint> column = child.getColumns().get(bestIndex);
+
+                // Children are decoded just for this merge, and each column is used once, so it's safe to modify them.
+                for (DataPoint dataPoint : column) {
+                    dataPoint.setMappingId(translations[childNo][dataPoint.getMappingId()]);
+                }
+
+                columns.add(column);
+
+                byte[] childSteps = child.getColumnGenerationSteps();
+
+                generationSteps[relativeX * Lod.width + relativeZ] = childSteps == null ? (byte) GenerationStep.LIGHT.value : childSteps[bestIndex];
+            }
+        }
+
+        return new Lod(this.position, this.idMappings, columns, beacons, generationSteps);
+    }
+
+    protected int getTop(List<DataPoint> column)
+    {
+        int top = Integer.MIN_VALUE;
+
+        for (DataPoint dataPoint : column) {
+            top = Math.max(top, dataPoint.getTopY());
+        }
+
+        return top;
+    }
+
+    protected int getMappingId(IdMapping mapping)
+    {
+        return this.mapMap.computeIfAbsent(mapping.serialize(), (key) -> {
+            this.idMappings.add(mapping);
+
+            return this.idMappings.size() - 1;
+        });
+    }
+}
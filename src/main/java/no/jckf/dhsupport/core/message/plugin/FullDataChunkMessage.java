@@ -20,7 +20,7 @@ package no.jckf.dhsupport.core.message.plugin;
 
 import no.jckf.dhsupport.core.bytestream.Encoder;
 
-public class FullDataChunkMessage extends PluginMessage
+public class FullDataChunkMessage extends PluginMessage implements BufferedPluginMessage
 {
     protected int bufferId;
 
@@ -33,11 +33,18 @@ public class FullDataChunkMessage extends PluginMessage
         this.bufferId = bufferId;
     }
 
+    @Override
     public int getBufferId()
     {
         return this.bufferId;
     }
 
+    @Override
+    public int getBufferIdOffset()
+    {
+        return 0;
+    }
+
     public void setData(byte[] data)
     {
         this.data = data;
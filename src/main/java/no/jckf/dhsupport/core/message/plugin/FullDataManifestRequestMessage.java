@@ -0,0 +1,70 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.message.plugin;
+
+import no.jckf.dhsupport.core.bytestream.Decoder;
+
+// Asks for the timestamps of all LODs in a region, so that only the outdated ones have to be requested.
+public class FullDataManifestRequestMessage extends TrackablePluginMessage
+{
+    protected String worldName;
+
+    protected int regionX;
+
+    protected int regionZ;
+
+    public void setWorldName(String worldName)
+    {
+        this.worldName = worldName;
+    }
+
+    public String getWorldName()
+    {
+        return this.worldName;
+    }
+
+    public void setRegionX(int regionX)
+    {
+        this.regionX = regionX;
+    }
+
+    public int getRegionX()
+    {
+        return this.regionX;
+    }
+
+    public void setRegionZ(int regionZ)
+    {
+        this.regionZ = regionZ;
+    }
+
+    public int getRegionZ()
+    {
+        return this.regionZ;
+    }
+
+    @Override
+    public void decode(Decoder decoder)
+    {
+        this.worldName = decoder.readShortString();
+
+        this.regionX = decoder.readInt();
+        this.regionZ = decoder.readInt();
+    }
+}
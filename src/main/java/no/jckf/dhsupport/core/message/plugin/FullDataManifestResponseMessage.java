@@ -0,0 +1,66 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.message.plugin;
+
+import no.jckf.dhsupport.core.bytestream.Encoder;
+
+public class FullDataManifestResponseMessage extends TrackablePluginMessage
+{
+    // One timestamp (in seconds) per section in the region, ordered by X and then Z. Zero means there is no LOD.
+    protected int[] timestamps;
+
+    public void setTimestamps(int[] timestamps)
+    {
+        this.timestamps = timestamps;
+    }
+
+    public int[] getTimestamps()
+    {
+        return this.timestamps;
+    }
+
+    @Override
+    public void encode(Encoder encoder)
+    {
+        // Which sections have a LOD, as a bit set.
+        long[] present = new long[(this.timestamps.length + 63) / 64];
+
+        for (int i = 0; i < this.timestamps.length; i++) {
+            if (this.timestamps[i] != 0) {
+                present[i >> 6] |= 1L << (i & 63);
+            }
+        }
+
+        encoder.writeShort(this.timestamps.length);
+
+        for (long bits : present) {
+            encoder.writeLong(bits);
+        }
+
+        // LODs in the same region are usually built around the same time, so the differences are small.
+        int previous = 0;
+
+        for (int timestamp : this.timestamps) {
+            if (timestamp != 0) {
+                encoder.writeVarInt((timestamp - previous << 1) ^ (timestamp - previous >> 31));
+                previous = timestamp;
+            }
+        }
+    }
+}
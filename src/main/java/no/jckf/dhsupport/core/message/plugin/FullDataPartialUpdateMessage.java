@@ -20,7 +20,9 @@ package no.jckf.dhsupport.core.message.plugin;
 
 import no.jckf.dhsupport.core.bytestream.Encoder;
 
-public class FullDataPartialUpdateMessage extends PluginMessage
+import java.nio.charset.StandardCharsets;
+
+public class FullDataPartialUpdateMessage extends PluginMessage implements BufferedPluginMessage
 {
     protected String levelKey;
 
@@ -43,11 +45,19 @@ public class FullDataPartialUpdateMessage extends PluginMessage
         this.bufferId = bufferId;
     }
 
+    @Override
     public int getBufferId()
     {
         return bufferId;
     }
 
+    @Override
+    public int getBufferIdOffset()
+    {
+        // The level key comes first, as a short length followed by its bytes.
+        return 2 + this.levelKey.getBytes(StandardCharsets.UTF_8).length;
+    }
+
     public void setBeacons(byte[] beacons)
     {
         this.beacons = beacons;
@@ -0,0 +1,129 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+import no.jckf.dhsupport.core.scheduling.TickMonitor;
+
+import javax.annotation.Nullable;
+
+// Adjusts the size of a concurrency window using additive increase, multiplicative decrease.
+// The window grows by about one slot per window's worth of completed requests, and shrinks by a quarter when requests
+// start taking much longer than usual or when the server falls behind on ticks.
+public class AdaptiveConcurrency
+{
+    protected static final double INCREASE = 1.0;
+
+    protected static final double DECREASE_FACTOR = 0.75;
+
+    // How much slower than the baseline a request may be before we consider the server congested.
+    protected static final double LATENCY_TOLERANCE = 2.0;
+
+    protected static final double SMOOTHING = 0.1;
+
+    // How quickly the baseline follows the latency upwards. Lets us recover if the world gets more expensive to generate.
+    protected static final double BASELINE_DRIFT = 0.001;
+
+    protected ConcurrencyWindow window;
+
+    protected int minLimit;
+
+    protected int maxLimit;
+
+    protected double limit;
+
+    @Nullable
+    protected TickMonitor tickMonitor;
+
+    protected double minTps;
+
+    protected double smoothedLatency = 0;
+
+    protected double baselineLatency = 0;
+
+    protected long lastDecrease = 0;
+
+    public AdaptiveConcurrency(ConcurrencyWindow window, int minLimit, int maxLimit, @Nullable TickMonitor tickMonitor, double minTps)
+    {
+        this.window = window;
+        this.minLimit = Math.max(1, minLimit);
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+        this.tickMonitor = tickMonitor;
+        this.minTps = minTps;
+
+        this.limit = this.window.getLimit();
+    }
+
+    public synchronized void onCompleted(long latencyNanos)
+    {
+        double latency = latencyNanos / 1_000_000.0;
+
+        if (this.smoothedLatency == 0) {
+            this.smoothedLatency = latency;
+            this.baselineLatency = latency;
+        } else {
+            this.smoothedLatency += (latency - this.smoothedLatency) * SMOOTHING;
+
+            if (this.smoothedLatency < this.baselineLatency) {
+                this.baselineLatency = this.smoothedLatency;
+            } else {
+                this.baselineLatency += (this.smoothedLatency - this.baselineLatency) * BASELINE_DRIFT;
+            }
+        }
+
+        boolean congested = this.smoothedLatency > this.baselineLatency * LATENCY_TOLERANCE;
+
+        if (this.tickMonitor != null) {
+            Double tps = this.tickMonitor.getTps();
+
+            if (tps != null && tps < this.minTps) {
+                congested = true;
+            }
+        }
+
+        if (congested) {
+            long now = System.nanoTime();
+
+            // Only back off once per round trip, so that a single slow batch doesn't collapse the window.
+            if (now - this.lastDecrease > (long) (this.smoothedLatency * 1_000_000)) {
+                this.limit = Math.max(this.minLimit, this.limit * DECREASE_FACTOR);
+                this.lastDecrease = now;
+            }
+        } else {
+            this.limit = Math.min(this.maxLimit, this.limit + INCREASE / this.limit);
+        }
+
+        this.window.setLimit((int) this.limit);
+    }
+
+    public synchronized void setMaxLimit(int maxLimit)
+    {
+        this.maxLimit = Math.max(this.minLimit, maxLimit);
+
+        if (this.limit > this.maxLimit) {
+            this.limit = this.maxLimit;
+
+            this.window.setLimit((int) this.limit);
+        }
+    }
+
+    public synchronized int getLimit()
+    {
+        return (int) this.limit;
+    }
+}
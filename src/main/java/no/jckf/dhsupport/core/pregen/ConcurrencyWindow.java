@@ -0,0 +1,171 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+// Limits the number of requests in flight. Unlike a plain semaphore, the limit can be changed while requests are
+// running, and waiting threads can be released early by closing the window.
+public class ConcurrencyWindow
+{
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    protected final Condition changed = this.lock.newCondition();
+
+    protected int limit;
+
+    protected int inFlight = 0;
+
+    protected boolean closed = false;
+
+    public ConcurrencyWindow(int limit)
+    {
+        this.limit = Math.max(1, limit);
+    }
+
+    // Wait for a free slot. Returns false if the window was closed or the thread was interrupted while waiting.
+    public boolean acquire()
+    {
+        return this.acquire(() -> true);
+    }
+
+    // Same as above, but also gives up when keepWaiting returns false. It is checked every time the window is woken up.
+    public boolean acquire(BooleanSupplier keepWaiting)
+    {
+        this.lock.lock();
+
+        try {
+            while (!this.closed && this.inFlight >= this.limit) {
+                if (!keepWaiting.getAsBoolean()) {
+                    return false;
+                }
+
+                this.changed.await();
+            }
+
+            if (this.closed) {
+                return false;
+            }
+
+            this.inFlight++;
+
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+
+            return false;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void release()
+    {
+        this.lock.lock();
+
+        try {
+            this.inFlight--;
+
+            this.changed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    // Wait until every acquired slot has been released.
+    public void awaitEmpty()
+    {
+        this.lock.lock();
+
+        try {
+            while (this.inFlight > 0) {
+                this.changed.await();
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void wakeUp()
+    {
+        this.lock.lock();
+
+        try {
+            this.changed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void close()
+    {
+        this.lock.lock();
+
+        try {
+            this.closed = true;
+
+            this.changed.signalAll();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public void setLimit(int limit)
+    {
+        this.lock.lock();
+
+        try {
+            int previousLimit = this.limit;
+
+            this.limit = Math.max(1, limit);
+
+            if (this.limit > previousLimit) {
+                this.changed.signalAll();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getLimit()
+    {
+        this.lock.lock();
+
+        try {
+            return this.limit;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getInFlight()
+    {
+        this.lock.lock();
+
+        try {
+            return this.inFlight;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+}
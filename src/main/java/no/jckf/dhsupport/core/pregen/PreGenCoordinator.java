@@ -0,0 +1,111 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+import no.jckf.dhsupport.core.DhSupport;
+import no.jckf.dhsupport.core.PreGenerator;
+import no.jckf.dhsupport.core.configuration.DhsConfig;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+
+// Shares one concurrency budget between all running pre-generators.
+// Each generator gets a slice of the budget in proportion to its weight, and every request must also fit inside the
+// global window. When a generator starts or stops, the others get their slices resized.
+public class PreGenCoordinator
+{
+    protected DhSupport dhSupport;
+
+    protected final Map<PreGenerator, Integer> weights = new LinkedHashMap<>();
+
+    protected int totalWeight = 0;
+
+    protected ConcurrencyWindow window = new ConcurrencyWindow(1);
+
+    public PreGenCoordinator(DhSupport dhSupport)
+    {
+        this.dhSupport = dhSupport;
+    }
+
+    public synchronized void register(PreGenerator generator, int weight)
+    {
+        int previous = this.weights.getOrDefault(generator, 0);
+
+        this.weights.put(generator, Math.max(1, weight));
+
+        this.totalWeight += Math.max(1, weight) - previous;
+    }
+
+    public synchronized void unregister(PreGenerator generator)
+    {
+        Integer weight = this.weights.remove(generator);
+
+        if (weight != null) {
+            this.totalWeight -= weight;
+        }
+    }
+
+    // Total number of pre-generation requests that may be in flight, across all worlds.
+    public int getBudget()
+    {
+        int globalLimit = this.dhSupport.getConfig().getInt(
+            DhsConfig.PREGEN_GLOBAL_CONCURRENCY_LIMIT,
+            this.dhSupport.getConfig().getInt(DhsConfig.FULL_DATA_REQUEST_CONCURRENCY_LIMIT)
+        );
+
+        return this.dhSupport.getLoadGovernor().scale(globalLimit);
+    }
+
+    // This generator's slice of the budget.
+    public synchronized int getShare(PreGenerator generator)
+    {
+        Integer weight = this.weights.get(generator);
+
+        if (weight == null || this.totalWeight == 0) {
+            return 1;
+        }
+
+        return Math.max(1, (int) ((long) this.getBudget() * weight / this.totalWeight));
+    }
+
+    public synchronized int getGeneratorCount()
+    {
+        return this.weights.size();
+    }
+
+    // Wait for a slot in the global window. Gives up and returns false as soon as keepWaiting says so.
+    public boolean acquire(BooleanSupplier keepWaiting)
+    {
+        this.window.setLimit(this.getBudget());
+
+        return this.window.acquire(keepWaiting);
+    }
+
+    public void release()
+    {
+        this.window.release();
+    }
+
+    // Make waiting generators check whether they should still be waiting.
+    public void wakeUp()
+    {
+        this.window.wakeUp();
+    }
+}
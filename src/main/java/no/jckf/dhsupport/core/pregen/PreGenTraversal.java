@@ -0,0 +1,75 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+// Walks over the section positions of a pre-generation job in a fixed, repeatable order.
+public abstract class PreGenTraversal
+{
+    public static final String SPIRAL = "spiral";
+
+    public static final String REGION = "region";
+
+    protected int x;
+
+    protected int z;
+
+    protected int index = 0;
+
+    public static PreGenTraversal create(String type, int centerX, int centerZ, int radius)
+    {
+        if (type.equalsIgnoreCase(REGION)) {
+            return new RegionTraversal(centerX, centerZ, radius);
+        }
+
+        return new SpiralTraversal(centerX, centerZ, radius);
+    }
+
+    // Advance to the next position. Returns false when there are no more positions.
+    public abstract boolean next();
+
+    // Total number of positions this traversal will visit.
+    public abstract int size();
+
+    public abstract String getType();
+
+    // Section X of the current position.
+    public int getX()
+    {
+        return this.x;
+    }
+
+    // Section Z of the current position.
+    public int getZ()
+    {
+        return this.z;
+    }
+
+    // Number of positions visited so far, including the current one.
+    public int getIndex()
+    {
+        return this.index;
+    }
+
+    public void skip(int count)
+    {
+        for (int i = 0; i < count && this.next(); i++) {
+
+        }
+    }
+}
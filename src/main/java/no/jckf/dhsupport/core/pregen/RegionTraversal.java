@@ -0,0 +1,131 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+// Visits every section of a region file before moving on to the next one. Region files are visited in rings around
+// the center, so that areas close to the center are still completed first.
+public class RegionTraversal extends PreGenTraversal
+{
+    // A region file is 32x32 chunks, which is 8x8 sections.
+    protected static final int SECTIONS_PER_REGION_FILE = 8;
+
+    protected int minX;
+
+    protected int minZ;
+
+    protected int maxX;
+
+    protected int maxZ;
+
+    protected List<int[]> regions = new ArrayList<>();
+
+    protected int regionIndex = -1;
+
+    protected int regionMinX;
+
+    protected int regionMinZ;
+
+    protected int regionMaxX;
+
+    protected int regionMaxZ;
+
+    public RegionTraversal(int centerX, int centerZ, int radius)
+    {
+        // Same area as the spiral: a square with sides of twice the radius, rounded up to whole sections.
+        int halfSide = Math.max(1, (radius + 63) / 64);
+
+        this.minX = centerX - halfSide;
+        this.minZ = centerZ - halfSide;
+        this.maxX = centerX + halfSide - 1;
+        this.maxZ = centerZ + halfSide - 1;
+
+        int centerRegionX = Math.floorDiv(centerX, SECTIONS_PER_REGION_FILE);
+        int centerRegionZ = Math.floorDiv(centerZ, SECTIONS_PER_REGION_FILE);
+
+        for (int regionX = Math.floorDiv(this.minX, SECTIONS_PER_REGION_FILE); regionX <= Math.floorDiv(this.maxX, SECTIONS_PER_REGION_FILE); regionX++) {
+            for (int regionZ = Math.floorDiv(this.minZ, SECTIONS_PER_REGION_FILE); regionZ <= Math.floorDiv(this.maxZ, SECTIONS_PER_REGION_FILE); regionZ++) {
+                this.regions.add(new int[] { regionX, regionZ });
+            }
+        }
+
+        // Closest ring first. Within a ring, keep a stable row order.
+        this.regions.sort(
+            Comparator.<int[]>comparingInt((region) -> Math.max(Math.abs(region[0] - centerRegionX), Math.abs(region[1] - centerRegionZ)))
+                .thenComparingInt((region) -> region[0])
+                .thenComparingInt((region) -> region[1])
+        );
+    }
+
+    protected boolean nextRegion()
+    {
+        this.regionIndex++;
+
+        if (this.regionIndex >= this.regions.size()) {
+            return false;
+        }
+
+        int[] region = this.regions.get(this.regionIndex);
+
+        // Clip the region to the area we're generating.
+        this.regionMinX = Math.max(this.minX, region[0] * SECTIONS_PER_REGION_FILE);
+        this.regionMinZ = Math.max(this.minZ, region[1] * SECTIONS_PER_REGION_FILE);
+        this.regionMaxX = Math.min(this.maxX, region[0] * SECTIONS_PER_REGION_FILE + SECTIONS_PER_REGION_FILE - 1);
+        this.regionMaxZ = Math.min(this.maxZ, region[1] * SECTIONS_PER_REGION_FILE + SECTIONS_PER_REGION_FILE - 1);
+
+        this.x = this.regionMinX;
+        this.z = this.regionMinZ;
+
+        return true;
+    }
+
+    @Override
+    public boolean next()
+    {
+        if (this.regionIndex == -1 || (this.x == this.regionMaxX && this.z == this.regionMaxZ)) {
+            if (!this.nextRegion()) {
+                return false;
+            }
+        } else if (this.z < this.regionMaxZ) {
+            this.z++;
+        } else {
+            this.z = this.regionMinZ;
+            this.x++;
+        }
+
+        this.index++;
+
+        return true;
+    }
+
+    @Override
+    public int size()
+    {
+        return (this.maxX - this.minX + 1) * (this.maxZ - this.minZ + 1);
+    }
+
+    @Override
+    public String getType()
+    {
+        return REGION;
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.pregen;
+
+import no.jckf.dhsupport.core.Coordinates;
+
+// Outward square spiral around the center section.
+public class SpiralTraversal extends PreGenTraversal
+{
+    protected static final int[][] DIRECTIONS = {{ 0, 1 }, { 1, 0 }, { 0, -1 }, { -1, 0 }};
+
+    protected int totalSteps;
+
+    protected int dirIndex = 0;
+
+    protected int sideLength = 1;
+
+    protected int stepsOnThisSide = 0;
+
+    protected int directionChanges = 0;
+
+    public SpiralTraversal(int centerX, int centerZ, int radius)
+    {
+        this.x = centerX;
+        this.z = centerZ;
+
+        this.totalSteps = (int) Math.pow((double) Coordinates.blockToChunk(radius) / 2, 2);
+    }
+
+    @Override
+    public boolean next()
+    {
+        if (this.index >= this.totalSteps) {
+            return false;
+        }
+
+        if (this.stepsOnThisSide == this.sideLength) {
+            this.stepsOnThisSide = 0;
+            this.dirIndex = (this.dirIndex + 1) % 4; // Change direction
+            this.directionChanges++;
+
+            // The side length grows every second turn.
+            if (this.directionChanges % 2 == 0) {
+                this.sideLength++;
+            }
+        }
+
+        this.x += DIRECTIONS[this.dirIndex][0];
+        this.z += DIRECTIONS[this.dirIndex][1];
+
+        this.stepsOnThisSide++;
+        this.index++;
+
+        return true;
+    }
+
+    @Override
+    public int size()
+    {
+        return this.totalSteps;
+    }
+
+    @Override
+    public String getType()
+    {
+        return SPIRAL;
+    }
+}
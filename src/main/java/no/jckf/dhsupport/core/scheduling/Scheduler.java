@@ -33,7 +33,11 @@ public interface Scheduler
 
     <U> CompletableFuture<U> runOnSeparateThread(Supplier<U> supplier);
 
+    <U> CompletableFuture<U> runOnIoThread(Supplier<U> supplier);
+
     void cancelTasks();
 
     Executor getExecutor();
+
+    Executor getIoExecutor();
 }
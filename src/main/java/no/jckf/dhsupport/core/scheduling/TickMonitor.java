@@ -0,0 +1,32 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.scheduling;
+
+import javax.annotation.Nullable;
+
+public interface TickMonitor
+{
+    // Ticks per second, averaged over the last minute. Null if the server can't tell us.
+    @Nullable
+    Double getTps();
+
+    // Average milliseconds per tick. Null if the server can't tell us.
+    @Nullable
+    Double getAverageTickTime();
+}
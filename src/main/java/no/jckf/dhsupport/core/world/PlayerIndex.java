@@ -0,0 +1,154 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.world;
+
+import no.jckf.dhsupport.core.collections.LongConcurrentMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Keeps track of which players are where, in cells of 32x32 chunks, so that nearby players can be found without looking at all of them.
+public class PlayerIndex
+{
+    protected static final int CELL_SHIFT = 5;
+
+    protected Map<UUID, Entry> players = new ConcurrentHashMap<>();
+
+    protected Map<UUID, LongConcurrentMap<Set<UUID>>> cells = new ConcurrentHashMap<>();
+
+    public void update(UUID playerId, UUID worldId, int chunkX, int chunkZ)
+    {
+        Entry previous = this.players.get(playerId);
+
+        if (previous != null && previous.worldId.equals(worldId) && previous.chunkX == chunkX && previous.chunkZ == chunkZ) {
+            return;
+        }
+
+        Entry entry = new Entry(worldId, chunkX, chunkZ);
+
+        this.players.put(playerId, entry);
+
+        if (previous != null && previous.worldId.equals(worldId) && previous.cellKey == entry.cellKey) {
+            return;
+        }
+
+        this.getCell(worldId, entry.cellKey).add(playerId);
+
+        if (previous != null) {
+            this.getCell(previous.worldId, previous.cellKey).remove(playerId);
+        }
+    }
+
+    public void remove(UUID playerId)
+    {
+        Entry previous = this.players.remove(playerId);
+
+        if (previous != null) {
+            this.getCell(previous.worldId, previous.cellKey).remove(playerId);
+        }
+    }
+
+    // Players in the given world who are within the given number of chunks of the given chunk, along both axes.
+    public List<UUID> getPlayersNear(UUID worldId, int chunkX, int chunkZ, int radius)
+    {
+        List<UUID> nearby = new ArrayList<>();
+
+        LongConcurrentMap<Set<UUID>> worldCells = this.cells.get(worldId);
+
+        if (worldCells == null) {
+            return nearby;
+        }
+
+        for (int cellX = (chunkX - radius) >> CELL_SHIFT; cellX <= (chunkX + radius) >> CELL_SHIFT; cellX++) {
+            for (int cellZ = (chunkZ - radius) >> CELL_SHIFT; cellZ <= (chunkZ + radius) >> CELL_SHIFT; cellZ++) {
+                Set<UUID> cell = worldCells.get(packCell(cellX, cellZ));
+
+                if (cell == null) {
+                    continue;
+                }
+
+                for (UUID playerId : cell) {
+                    Entry entry = this.players.get(playerId);
+
+                    // The player may have moved on since we looked up the cell.
+                    if (entry == null || !entry.worldId.equals(worldId) || entry.cellKey != packCell(cellX, cellZ)) {
+                        continue;
+                    }
+
+                    if (Math.abs(entry.chunkX - chunkX) <= radius && Math.abs(entry.chunkZ - chunkZ) <= radius) {
+                        nearby.add(playerId);
+                    }
+                }
+            }
+        }
+
+        return nearby;
+    }
+
+    public boolean isNear(UUID playerId, UUID worldId, int chunkX, int chunkZ, int radius)
+    {
+        Entry entry = this.players.get(playerId);
+
+        return entry != null
+            && entry.worldId.equals(worldId)
+            && Math.abs(entry.chunkX - chunkX) <= radius
+            && Math.abs(entry.chunkZ - chunkZ) <= radius;
+    }
+
+    public int size()
+    {
+        return this.players.size();
+    }
+
+    protected Set<UUID> getCell(UUID worldId, long cellKey)
+    {
+        // Empty cells are kept around. Removing them safely while players move in and out isn't worth the trouble.
+        return this.cells
+            .computeIfAbsent(worldId, (id) -> new LongConcurrentMap<>())
+            .computeIfAbsent(cellKey, (key) -> ConcurrentHashMap.newKeySet());
+    }
+
+    protected static long packCell(int cellX, int cellZ)
+    {
+        return ((long) cellX << 32) | (cellZ & 0xFFFFFFFFL);
+    }
+
+    protected static class Entry
+    {
+        protected final UUID worldId;
+
+        protected final int chunkX;
+
+        protected final int chunkZ;
+
+        protected final long cellKey;
+
+        protected Entry(UUID worldId, int chunkX, int chunkZ)
+        {
+            this.worldId = worldId;
+            this.chunkX = chunkX;
+            this.chunkZ = chunkZ;
+            this.cellKey = packCell(chunkX >> CELL_SHIFT, chunkZ >> CELL_SHIFT);
+        }
+    }
+}
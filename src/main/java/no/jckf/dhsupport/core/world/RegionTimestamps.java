@@ -0,0 +1,165 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.world;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Reads the chunk timestamp table from Anvil region files (.mca).
+// A region file holds 32x32 chunks. The first 4 KiB are chunk locations, and the next 4 KiB are the time (in seconds)
+// each chunk was last saved, as big-endian ints indexed by x + z * 32.
+public class RegionTimestamps
+{
+    public static final int CHUNKS_PER_REGION = 32;
+
+    protected static final int TABLE_OFFSET = 4096;
+
+    protected static final int TABLE_SIZE = 4096;
+
+    protected static final int CACHE_SIZE = 64;
+
+    protected static class Table
+    {
+        protected long lastModified;
+
+        protected int[] timestamps;
+    }
+
+    protected final Map<String, Table> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Table> eldest)
+        {
+            return this.size() > CACHE_SIZE;
+        }
+    };
+
+    public static int chunkToRegionFile(int chunk)
+    {
+        return Math.floorDiv(chunk, CHUNKS_PER_REGION);
+    }
+
+    public static File getRegionFile(File regionFolder, int regionX, int regionZ)
+    {
+        return new File(regionFolder, "r." + regionX + "." + regionZ + ".mca");
+    }
+
+    // Last save time of a chunk, or 0 if it has never been saved.
+    public int getChunkTimestamp(@Nullable File regionFolder, int chunkX, int chunkZ)
+    {
+        @Nullable
+        int[] timestamps = this.getTimestamps(regionFolder, chunkToRegionFile(chunkX), chunkToRegionFile(chunkZ));
+
+        if (timestamps == null) {
+            return 0;
+        }
+
+        return timestamps[Math.floorMod(chunkX, CHUNKS_PER_REGION) + Math.floorMod(chunkZ, CHUNKS_PER_REGION) * CHUNKS_PER_REGION];
+    }
+
+    // Latest save time of any chunk in the given rectangle of chunks, or 0 if none of them have been saved.
+    public int getLatestTimestamp(@Nullable File regionFolder, int fromChunkX, int fromChunkZ, int width, int depth)
+    {
+        int latest = 0;
+
+        for (int chunkX = fromChunkX; chunkX < fromChunkX + width; chunkX++) {
+            for (int chunkZ = fromChunkZ; chunkZ < fromChunkZ + depth; chunkZ++) {
+                latest = Math.max(latest, this.getChunkTimestamp(regionFolder, chunkX, chunkZ));
+            }
+        }
+
+        return latest;
+    }
+
+    // The whole timestamp table of a region file, or null if the file doesn't exist.
+    @Nullable
+    public int[] getTimestamps(@Nullable File regionFolder, int regionX, int regionZ)
+    {
+        if (regionFolder == null) {
+            return null;
+        }
+
+        File file = getRegionFile(regionFolder, regionX, regionZ);
+
+        long lastModified = file.lastModified();
+
+        // The file does not exist.
+        if (lastModified == 0) {
+            return null;
+        }
+
+        String key = file.getPath();
+
+        synchronized (this.cache) {
+            Table table = this.cache.get(key);
+
+            if (table != null && table.lastModified == lastModified) {
+                return table.timestamps;
+            }
+        }
+
+        Table table = new Table();
+        table.lastModified = lastModified;
+        table.timestamps = this.readTimestamps(file);
+
+        synchronized (this.cache) {
+            this.cache.put(key, table);
+        }
+
+        return table.timestamps;
+    }
+
+    protected int[] readTimestamps(File file)
+    {
+        int[] timestamps = new int[CHUNKS_PER_REGION * CHUNKS_PER_REGION];
+
+        try (RandomAccessFile reader = new RandomAccessFile(file, "r")) {
+            // Empty or truncated files have no chunks in them.
+            if (reader.length() < TABLE_OFFSET + TABLE_SIZE) {
+                return timestamps;
+            }
+
+            byte[] table = new byte[TABLE_SIZE];
+
+            reader.seek(TABLE_OFFSET);
+            reader.readFully(table);
+
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = ((table[i * 4] & 0xFF) << 24)
+                    | ((table[i * 4 + 1] & 0xFF) << 16)
+                    | ((table[i * 4 + 2] & 0xFF) << 8)
+                    | (table[i * 4 + 3] & 0xFF);
+            }
+        } catch (IOException exception) {
+            // Treat unreadable files as if they have no chunks.
+        }
+
+        return timestamps;
+    }
+
+    public void clear()
+    {
+        synchronized (this.cache) {
+            this.cache.clear();
+        }
+    }
+}
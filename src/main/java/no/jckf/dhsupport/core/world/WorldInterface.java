@@ -19,8 +19,11 @@
 package no.jckf.dhsupport.core.world;
 
 import no.jckf.dhsupport.core.configuration.Configurable;
+import no.jckf.dhsupport.core.dataobject.BlockPosition;
 
 import javax.annotation.Nullable;
+import java.io.File;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 import java.util.concurrent.CompletableFuture;
@@ -43,6 +46,9 @@ public interface WorldInterface extends Configurable
 
     @Nullable Integer getWorldBorderRadius();
 
+    // Folder holding this world's region (.mca) files, if it has one.
+    @Nullable File getRegionFolder();
+
     boolean chunkExists(int x, int z);
 
     boolean isChunkLoaded(int x, int z);
@@ -69,6 +75,9 @@ public interface WorldInterface extends Configurable
 
     int getHighestYAt(int x, int z);
 
+    // Y of the top-most solid block, ignoring water and other non-blocking blocks.
+    int getOceanFloorYAt(int x, int z);
+
     String getBiomeAt(int x, int z);
 
     String getBiomeAt(int x, int y, int z);
@@ -79,11 +88,21 @@ public interface WorldInterface extends Configurable
 
     Map<String, String> getBlockPropertiesAt(int x, int y, int z);
 
+    // True if the 16 block tall chunk section containing this block holds nothing but air.
+    boolean isSectionEmpty(int x, int y, int z);
+
+    // True if every block in the 16 block tall chunk section containing this block has the same block state.
+    boolean isSectionUniform(int x, int y, int z);
+
+    // Cheap fingerprint of the top-most blocks in the chunk containing this block. Used to tell if a chunk has changed.
+    int getSurfaceHash(int x, int z);
+
     byte getBlockLightAt(int x, int y, int z);
 
     byte getSkyLightAt(int x, int y, int z);
 
-    boolean isBeacon(int x, int y, int z);
+    // Positions of beacons with an active pyramid within the given block area. The area should not span more than one region.
+    CompletableFuture<List<BlockPosition>> getActiveBeaconsAsync(int fromX, int fromZ, int toX, int toZ);
 
     int getBeaconColor(int x, int y, int z);
 }
@@ -0,0 +1,80 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class SectionKeyTest
+{
+    protected static final int MIN_COORDINATE = -(1 << 25);
+
+    protected static final int MAX_COORDINATE = (1 << 25) - 1;
+
+    protected void assertRoundTrip(int worldIndex, int sectionX, int sectionZ)
+    {
+        long key = SectionKey.pack(worldIndex, sectionX, sectionZ);
+
+        assertEquals(worldIndex, SectionKey.getWorldIndex(key));
+        assertEquals(sectionX, SectionKey.getX(key));
+        assertEquals(sectionZ, SectionKey.getZ(key));
+    }
+
+    @Test
+    public void packsAndUnpacksSmallCoordinates()
+    {
+        assertRoundTrip(0, 0, 0);
+        assertRoundTrip(1, 5, 7);
+        assertRoundTrip(3, -1, -1);
+        assertRoundTrip(3, -1, 1);
+        assertRoundTrip(3, 1, -1);
+    }
+
+    @Test
+    public void packsAndUnpacksExtremes()
+    {
+        assertRoundTrip(SectionKey.MAX_WORLDS - 1, MIN_COORDINATE, MAX_COORDINATE);
+        assertRoundTrip(SectionKey.MAX_WORLDS - 1, MAX_COORDINATE, MIN_COORDINATE);
+        assertRoundTrip(0, MIN_COORDINATE, MIN_COORDINATE);
+        assertRoundTrip(0, MAX_COORDINATE, MAX_COORDINATE);
+    }
+
+    @Test
+    public void negativeZDoesNotLeakIntoX()
+    {
+        long key = SectionKey.pack(2, 10, -10);
+
+        assertEquals(10, SectionKey.getX(key));
+        assertEquals(2, SectionKey.getWorldIndex(key));
+    }
+
+    @Test
+    public void neighboursHaveDifferentKeys()
+    {
+        long key = SectionKey.pack(1, 0, 0);
+
+        assertNotEquals(key, SectionKey.pack(1, 1, 0));
+        assertNotEquals(key, SectionKey.pack(1, 0, 1));
+        assertNotEquals(key, SectionKey.pack(1, -1, 0));
+        assertNotEquals(key, SectionKey.pack(1, 0, -1));
+        assertNotEquals(key, SectionKey.pack(2, 0, 0));
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.collections;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LongConcurrentMapTest
+{
+    @Test
+    public void putGetAndRemove()
+    {
+        LongConcurrentMap<String> map = new LongConcurrentMap<>();
+
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.get(1));
+        assertTrue(map.containsKey(1));
+        assertEquals(1, map.size());
+
+        assertEquals("b", map.remove(1));
+        assertNull(map.get(1));
+        assertNull(map.remove(1));
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void putIfAbsentKeepsExistingValue()
+    {
+        LongConcurrentMap<String> map = new LongConcurrentMap<>();
+
+        assertNull(map.putIfAbsent(-5, "a"));
+        assertEquals("a", map.putIfAbsent(-5, "b"));
+        assertEquals("a", map.get(-5));
+    }
+
+    @Test
+    public void removeWithValueOnlyRemovesMatchingEntry()
+    {
+        LongConcurrentMap<String> map = new LongConcurrentMap<>();
+
+        map.put(7, "a");
+
+        assertFalse(map.remove(7, "b"));
+        assertEquals("a", map.get(7));
+
+        assertTrue(map.remove(7, "a"));
+        assertNull(map.get(7));
+    }
+
+    @Test
+    public void computeIfAbsentOnlyComputesOnce()
+    {
+        LongConcurrentMap<Object> map = new LongConcurrentMap<>();
+        AtomicInteger calls = new AtomicInteger();
+
+        Object first = map.computeIfAbsent(3, (key) -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+
+        Object second = map.computeIfAbsent(3, (key) -> {
+            calls.incrementAndGet();
+            return new Object();
+        });
+
+        assertSame(first, second);
+        assertEquals(1, calls.get());
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void rejectsNullValues()
+    {
+        new LongConcurrentMap<String>().put(1, null);
+    }
+
+    @Test
+    public void keysReturnsEveryKey()
+    {
+        LongConcurrentMap<Long> map = new LongConcurrentMap<>();
+
+        long[] expected = new long[1000];
+
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = i * 31L - 500;
+            map.put(expected[i], expected[i]);
+        }
+
+        long[] keys = map.keys();
+
+        Arrays.sort(keys);
+        Arrays.sort(expected);
+
+        assertArrayEquals(expected, keys);
+    }
+
+    @Test
+    public void clearRemovesEverything()
+    {
+        LongConcurrentMap<Long> map = new LongConcurrentMap<>();
+
+        for (long key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+
+        map.clear();
+
+        assertTrue(map.isEmpty());
+        assertEquals(0, map.keys().length);
+        assertNull(map.get(50));
+    }
+
+    // A small key range with lots of removals exercises collisions, resizing and the backward shift on delete.
+    @Test
+    public void matchesHashMapUnderRandomOperations()
+    {
+        LongConcurrentMap<Long> map = new LongConcurrentMap<>();
+        Map<Long, Long> reference = new HashMap<>();
+
+        Random random = new Random(1234);
+
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(3000) - 1500;
+            long value = random.nextLong();
+
+            switch (random.nextInt(4)) {
+                case 0, 1 -> assertEquals(reference.put(key, value), map.put(key, value));
+                case 2 -> assertEquals(reference.remove(key), map.remove(key));
+                default -> assertEquals(reference.get(key), map.get(key));
+            }
+        }
+
+        assertEquals(reference.size(), map.size());
+
+        for (Map.Entry<Long, Long> entry : reference.entrySet()) {
+            assertEquals(entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+
+    @Test
+    public void concurrentComputeIfAbsentAgreesOnValues() throws InterruptedException
+    {
+        LongConcurrentMap<Object> map = new LongConcurrentMap<>();
+
+        Object[][] seen = new Object[4][1000];
+        Thread[] threads = new Thread[seen.length];
+
+        for (int threadNo = 0; threadNo < threads.length; threadNo++) {
+            Object[] results = seen[threadNo];
+
+            threads[threadNo] = new Thread(() -> {
+                for (int key = 0; key < results.length; key++) {
+                    results[key] = map.computeIfAbsent(key, (k) -> new Object());
+                }
+            });
+
+            threads[threadNo].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000, map.size());
+
+        for (int key = 0; key < 1000; key++) {
+            for (Object[] results : seen) {
+                assertSame(map.get(key), results[key]);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * DH Support, server-side support for Distant Horizons.
+ * Copyright (C) 2024 Jim C K Flaten
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program. If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package no.jckf.dhsupport.core.lodbuilders;
+
+import no.jckf.dhsupport.core.dataobject.Beacon;
+import no.jckf.dhsupport.core.dataobject.DataPoint;
+import no.jckf.dhsupport.core.dataobject.IdMapping;
+import no.jckf.dhsupport.core.dataobject.Lod;
+import no.jckf.dhsupport.core.dataobject.SectionPosition;
+import no.jckf.dhsupport.core.enums.GenerationStep;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LodMergerTest
+{
+    protected static SectionPosition position(int detailLevel, int x, int z)
+    {
+        SectionPosition position = new SectionPosition();
+        position.setDetailLevel(detailLevel);
+        position.setX(x);
+        position.setZ(z);
+
+        return position;
+    }
+
+    protected static DataPoint dataPoint(int mappingId, int startY, int height)
+    {
+        DataPoint dataPoint = new DataPoint();
+        dataPoint.setMappingId(mappingId);
+        dataPoint.setStartY(startY);
+        dataPoint.setHeight(height);
+
+        return dataPoint;
+    }
+
+    // Every column is a single data point of the given height, using the child's only mapping.
+    protected static Lod flatChild(String block, int height, List<Beacon> beacons)
+    {
+        List<IdMapping> mappings = new ArrayList<>();
+        mappings.add(new IdMapping("plains", block, null));
+
+        List<List<DataPoint>> columns = new ArrayList<>();
+
+        for (int columnNo = 0; columnNo < Lod.width * Lod.width; columnNo++) {
+            List<DataPoint> column = new ArrayList<>();
+            column.add(dataPoint(0, 0, height));
+            columns.add(column);
+        }
+
+        return new Lod(position(6, 0, 0), mappings, columns, beacons, null);
+    }
+
+    protected static int columnIndex(int relativeX, int relativeZ)
+    {
+        return relativeX * Lod.width + relativeZ;
+    }
+
+    @Test
+    public void placesChildrenInTheirQuadrants()
+    {
+        Lod[] children = {
+            flatChild("stone", 10, new ArrayList<>()),
+            flatChild("dirt", 20, new ArrayList<>()),
+            flatChild("sand", 30, new ArrayList<>()),
+            flatChild("snow", 40, new ArrayList<>()),
+        };
+
+        Lod merged = new LodMerger(position(7, 0, 0), children).merge();
+
+        int half = Lod.width / 2;
+
+        assertEquals(Lod.width * Lod.width, merged.getColumns().size());
+        assertEquals(4, merged.getIdMappings().size());
+
+        assertEquals(10, merged.getColumns().get(columnIndex(0, 0)).get(0).getHeight());
+        assertEquals(20, merged.getColumns().get(columnIndex(0, half)).get(0).getHeight());
+        assertEquals(30, merged.getColumns().get(columnIndex(half, 0)).get(0).getHeight());
+        assertEquals(40, merged.getColumns().get(columnIndex(half, half)).get(0).getHeight());
+
+        DataPoint fromLastChild = merged.getColumns().get(columnIndex(Lod.width - 1, Lod.width - 1)).get(0);
+
+        assertEquals("snow", merged.getIdMappings().get(fromLastChild.getMappingId()).getBlock());
+    }
+
+    @Test
+    public void keepsTheTallestOfFourColumns()
+    {
+        Lod child = flatChild("stone", 10, new ArrayList<>());
+
+        // Second mapping, only used by the tall column.
+        child.getIdMappings().add(new IdMapping("plains", "gold_block", null));
+
+        List<DataPoint> tall = new ArrayList<>();
+        tall.add(dataPoint(0, 0, 10));
+        tall.add(dataPoint(1, 10, 50));
+
+        child.getColumns().set(columnIndex(1, 1), tall);
+
+        Lod merged = new LodMerger(position(7, 0, 0), new Lod[] { child, null, null, null }).merge();
+
+        List<DataPoint> column = merged.getColumns().get(columnIndex(0, 0));
+
+        assertEquals(2, column.size());
+        assertEquals(60, column.get(1).getTopY());
+        assertEquals("gold_block", merged.getIdMappings().get(column.get(1).getMappingId()).getBlock());
+    }
+
+    @Test
+    public void sharesMappingsBetweenChildren()
+    {
+        Lod[] children = {
+            flatChild("stone", 10, new ArrayList<>()),
+            flatChild("stone", 10, new ArrayList<>()),
+            flatChild("dirt", 10, new ArrayList<>()),
+            null,
+        };
+
+        Lod merged = new LodMerger(position(7, 0, 0), children).merge();
+
+        assertEquals(2, merged.getIdMappings().size());
+    }
+
+    @Test
+    public void leavesMissingChildrenEmpty()
+    {
+        Lod merged = new LodMerger(position(7, 0, 0), new Lod[] { flatChild("stone", 10, new ArrayList<>()), null, null, null }).merge();
+
+        int half = Lod.width / 2;
+
+        assertTrue(merged.getColumns().get(columnIndex(half, half)).isEmpty());
+        assertEquals((byte) GenerationStep.EMPTY.value, merged.getColumnGenerationSteps()[columnIndex(half, half)]);
+        assertEquals((byte) GenerationStep.LIGHT.value, merged.getColumnGenerationSteps()[columnIndex(0, 0)]);
+    }
+
+    @Test
+    public void collectsBeaconsFromAllChildren()
+    {
+        List<Beacon> first = new ArrayList<>();
+        first.add(new Beacon(1, 64, 1, 0xFFFFFF));
+
+        List<Beacon> second = new ArrayList<>();
+        second.add(new Beacon(70, 64, 70, 0xFF0000));
+        second.add(new Beacon(71, 64, 71, 0x00FF00));
+
+        Lod[] children = {
+            flatChild("stone", 10, first),
+            null,
+            null,
+            flatChild("stone", 10, second),
+        };
+
+        Lod merged = new LodMerger(position(7, 0, 0), children).merge();
+
+        assertEquals(3, merged.getBeacons().size());
+    }
+}